@@ -0,0 +1,103 @@
+package org.secuso.privacyfriendlycircuittraining.backup
+
+import android.content.Context
+import android.database.DatabaseUtils
+import android.database.sqlite.SQLiteDatabase
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.secuso.privacyfriendlycircuittraining.database.ExerciseSearchIndex
+import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper
+import org.secuso.privacyfriendlycircuittraining.models.WorkoutSessionData
+import java.io.File
+
+/**
+ * Checks that [BackupRestorer.replaceDatabase] swaps in the restored file without copying it,
+ * removes the journals of the old file and that a reopened connection sees the new data.
+ */
+@RunWith(AndroidJUnit4::class)
+class BackupRestorerTest {
+
+    private lateinit var context: Context
+    private lateinit var helper: PFASQLiteHelper
+
+    @Before
+    fun setUp() {
+        context = InstrumentationRegistry.getInstrumentation().targetContext
+        deleteDatabases()
+        helper = PFASQLiteHelper(context)
+    }
+
+    @After
+    fun tearDown() {
+        helper.close()
+        deleteDatabases()
+    }
+
+    @Test
+    fun replacesLiveDatabase() {
+        helper.addWorkoutDataWithID(WorkoutSessionData(LIVE_DAY, 60, 5))
+        helper.close()
+        createRestoreDatabase()
+        // keeps a connection open on the old file, like the app process during a restore
+        assertEquals(60, helper.getWorkoutData(LIVE_DAY).getWORKOUTTIME())
+
+        val liveFile = context.getDatabasePath(PFASQLiteHelper.DATABASE_NAME)
+        val restoreFile = context.getDatabasePath(RESTORE_DATABASE)
+        // a journal left behind by the old file must not be applied to the new one
+        File(liveFile.path + "-journal").writeBytes(ByteArray(512))
+        val restoreSize = restoreFile.length()
+
+        val start = System.nanoTime()
+        BackupRestorer().replaceDatabase(context, RESTORE_DATABASE)
+        Log.i(TAG, "Replaced the database in ${(System.nanoTime() - start) / 1000} µs, " +
+                "peak disk usage ${(restoreSize + liveFile.length()) / 1024} KiB")
+
+        assertFalse(restoreFile.exists())
+        assertEquals(restoreSize, liveFile.length())
+        for (suffix in arrayOf("-journal", "-wal", "-shm")) {
+            assertFalse(File(liveFile.path + suffix).exists())
+        }
+
+        // what DatabaseReplacedReceiver does in the app process
+        helper.reopen()
+        assertEquals(0, helper.getWorkoutData(LIVE_DAY).getID())
+        assertEquals(300, helper.getWorkoutData(RESTORED_DAY).getWORKOUTTIME())
+        assertEquals(1, DatabaseUtils.queryNumEntries(helper.readableDatabase, PFASQLiteHelper.TABLE_DATA))
+    }
+
+    /**
+     * Copies the closed live database under the name of the restore database and gives it a
+     * different workout session.
+     */
+    private fun createRestoreDatabase() {
+        val file = context.getDatabasePath(RESTORE_DATABASE)
+        context.getDatabasePath(PFASQLiteHelper.DATABASE_NAME).copyTo(file, overwrite = true)
+        val db = SQLiteDatabase.openDatabase(file.path, null, SQLiteDatabase.OPEN_READWRITE)
+        try {
+            db.delete(PFASQLiteHelper.TABLE_DATA, null, null)
+            db.execSQL("INSERT INTO ${PFASQLiteHelper.TABLE_DATA}(id, workoutTime, calories) VALUES ($RESTORED_DAY, 300, 25)")
+        } finally {
+            db.close()
+        }
+    }
+
+    private fun deleteDatabases() {
+        context.deleteDatabase(PFASQLiteHelper.DATABASE_NAME)
+        context.deleteDatabase(RESTORE_DATABASE)
+        context.deleteDatabase(ExerciseSearchIndex.DATABASE_NAME)
+    }
+
+    companion object {
+        private const val TAG = "BackupRestorerTest"
+        private const val RESTORE_DATABASE = "restoreDatabaseTest"
+        private const val LIVE_DAY = 20260101
+        private const val RESTORED_DAY = 20260102
+    }
+}
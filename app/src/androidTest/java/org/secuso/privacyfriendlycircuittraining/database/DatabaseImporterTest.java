@@ -0,0 +1,205 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.database;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.JsonReader;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.secuso.privacyfriendlycircuittraining.helpers.DateKeys;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that an import is atomic and measures how long a large one takes.
+ *
+ * @version 20261019
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseImporterTest {
+
+    private static final String LOG_TAG = "DatabaseImporterTest";
+
+    private static final int FIRST_DAY = 20000101;
+    private static final int LARGE_IMPORT_ROWS = 100000;
+    private static final int LARGE_IMPORT_EXERCISES = 10000;
+    private static final String SOURCE_DATABASE_NAME = "importTestSource";
+
+    private Context context;
+    private PFASQLiteHelper helper;
+    private SQLiteDatabase database;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        deleteDatabases();
+        helper = new PFASQLiteHelper(context);
+        database = helper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        deleteDatabases();
+    }
+
+    @Test
+    public void failedImportChangesNothing() {
+        database.execSQL("INSERT INTO " + PFASQLiteHelper.TABLE_DATA + "(id, workoutTime, calories) VALUES (" + FIRST_DAY + ", 60, 5)");
+        new RecordTracker(database).rebuild();
+
+        // a few thousand valid rows followed by a truncated one
+        StringBuilder json = new StringBuilder("{\"" + PFASQLiteHelper.TABLE_DATA + "\":[");
+        for (int i = 1; i <= 2000; i++) {
+            json.append("{\"id\":\"").append(DateKeys.addDays(FIRST_DAY, i)).append("\",\"workoutTime\":\"30\",\"calories\":\"2\"},");
+        }
+        json.append("{\"id\":");
+
+        try {
+            new DatabaseImporter(database).importTables(new JsonReader(new StringReader(json.toString())));
+            fail("The import of a truncated backup has to fail");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals(1, DatabaseUtils.queryNumEntries(database, PFASQLiteHelper.TABLE_DATA));
+        assertEquals(60, new RecordTracker(database).read().getTotalTime());
+    }
+
+    /**
+     * Exports a database of 100k rows with {@link DatabaseExporter} and times the streaming
+     * import of the file.
+     */
+    @Test
+    public void importsLargeExport() throws IOException {
+        File sourceFile = context.getDatabasePath(SOURCE_DATABASE_NAME);
+        SQLiteDatabase source = SQLiteDatabase.openOrCreateDatabase(sourceFile, null);
+        try {
+            source.execSQL("CREATE TABLE " + PFASQLiteHelper.TABLE_DATA + "(id INTEGER PRIMARY KEY, workoutTime LONG, calories INTEGER, time INTEGER)");
+            source.execSQL("CREATE TABLE " + PFASQLiteHelper.TABLE_DATA_EX + "(id INTEGER PRIMARY KEY, name TEXT, description TEXT, image TEXT)");
+            source.beginTransaction();
+            try {
+                SQLiteStatement insert = source.compileStatement("INSERT INTO " + PFASQLiteHelper.TABLE_DATA + "(id, workoutTime, calories) VALUES (?, 30, 2)");
+                for (int i = 0; i < LARGE_IMPORT_ROWS - LARGE_IMPORT_EXERCISES; i++) {
+                    insert.bindLong(1, DateKeys.addDays(FIRST_DAY, i));
+                    insert.executeInsert();
+                }
+                insert.close();
+                insert = source.compileStatement("INSERT INTO " + PFASQLiteHelper.TABLE_DATA_EX + "(id, name, description, image) VALUES (?, ?, ?, NULL)");
+                for (int i = 1; i <= LARGE_IMPORT_EXERCISES; i++) {
+                    insert.bindLong(1, i);
+                    insert.bindString(2, "Exercise " + i);
+                    insert.bindString(3, "Description of exercise " + i);
+                    insert.executeInsert();
+                }
+                insert.close();
+                source.setTransactionSuccessful();
+            } finally {
+                source.endTransaction();
+            }
+        } finally {
+            source.close();
+        }
+
+        File export = new File(context.getCacheDir(), SOURCE_DATABASE_NAME + ".json");
+        try {
+            OutputStream output = new BufferedOutputStream(new FileOutputStream(export));
+            try {
+                new DatabaseExporter(sourceFile.getPath(), SOURCE_DATABASE_NAME).writeDatabase(output);
+            } finally {
+                output.close();
+            }
+
+            long start = System.nanoTime();
+            JsonReader reader = new JsonReader(new InputStreamReader(
+                    new BufferedInputStream(new FileInputStream(export)), StandardCharsets.UTF_8));
+            try {
+                new DatabaseImporter(database).importDatabase(reader);
+            } finally {
+                reader.close();
+            }
+            Log.i(LOG_TAG, "Imported " + LARGE_IMPORT_ROWS + " rows from " + export.length() / 1024 + " KiB of JSON in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        } finally {
+            export.delete();
+        }
+
+        assertEquals(LARGE_IMPORT_ROWS - LARGE_IMPORT_EXERCISES, DatabaseUtils.queryNumEntries(database, PFASQLiteHelper.TABLE_DATA));
+        assertEquals(LARGE_IMPORT_EXERCISES, DatabaseUtils.queryNumEntries(database, PFASQLiteHelper.TABLE_DATA_EX));
+        assertEquals(LARGE_IMPORT_ROWS - LARGE_IMPORT_EXERCISES, new RecordTracker(database).read().getWorkoutDays());
+    }
+
+    /**
+     * Times the merge of the tables of another database, as used by the merging restore.
+     */
+    @Test
+    public void mergesLargeDatabase() {
+        SQLiteDatabase source = SQLiteDatabase.create(null);
+        try {
+            source.execSQL("CREATE TABLE " + PFASQLiteHelper.TABLE_DATA + "(id INTEGER PRIMARY KEY, workoutTime LONG, calories INTEGER, time INTEGER)");
+            SQLiteStatement insert = source.compileStatement("INSERT INTO " + PFASQLiteHelper.TABLE_DATA + "(id, workoutTime, calories) VALUES (?, 30, 2)");
+            source.beginTransaction();
+            try {
+                for (int i = 0; i < LARGE_IMPORT_ROWS; i++) {
+                    insert.bindLong(1, DateKeys.addDays(FIRST_DAY, i));
+                    insert.executeInsert();
+                }
+                source.setTransactionSuccessful();
+            } finally {
+                source.endTransaction();
+                insert.close();
+            }
+
+            long start = System.nanoTime();
+            new DatabaseImporter(database).importTables(source, Collections.singleton(PFASQLiteHelper.TABLE_DATA));
+            Log.i(LOG_TAG, "Merged " + LARGE_IMPORT_ROWS + " workout sessions in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        } finally {
+            source.close();
+        }
+
+        assertEquals(LARGE_IMPORT_ROWS, DatabaseUtils.queryNumEntries(database, PFASQLiteHelper.TABLE_DATA));
+        assertEquals(LARGE_IMPORT_ROWS, new RecordTracker(database).read().getWorkoutDays());
+    }
+
+    private void deleteDatabases() {
+        context.deleteDatabase(PFASQLiteHelper.DATABASE_NAME);
+        context.deleteDatabase(ExerciseSearchIndex.DATABASE_NAME);
+        context.deleteDatabase(SOURCE_DATABASE_NAME);
+    }
+}
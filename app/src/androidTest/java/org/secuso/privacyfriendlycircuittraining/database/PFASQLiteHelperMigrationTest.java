@@ -0,0 +1,321 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.secuso.privacyfriendlycircuittraining.helpers.DateKeys;
+import org.secuso.privacyfriendlycircuittraining.models.Exercise;
+import org.secuso.privacyfriendlycircuittraining.models.ExerciseSet;
+import org.secuso.privacyfriendlycircuittraining.models.WorkoutSessionData;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Creates databases with the schema of every older version by hand, opens them with
+ * {@link PFASQLiteHelper} and checks that the data survived the upgrade.
+ *
+ * @version 20261019
+ */
+@RunWith(AndroidJUnit4.class)
+public class PFASQLiteHelperMigrationTest {
+
+    private static final String LOG_TAG = "MigrationTest";
+
+    private static final int CURRENT_VERSION = 3;
+
+    private static final int DAY = 20260105;
+
+    // a large library and ten years of daily workouts
+    private static final int LARGE_EXERCISES = 10000;
+    private static final int LARGE_EXERCISE_SETS = 1000;
+    private static final int LARGE_HISTORY_DAYS = 3653;
+    // generous for slow emulators, the upgrades themselves take well below a second on a phone
+    private static final long MAX_UPGRADE_MS = 10000;
+
+    private Context context;
+    private PFASQLiteHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        deleteDatabases();
+    }
+
+    @After
+    public void tearDown() {
+        if (helper != null) {
+            helper.close();
+        }
+        deleteDatabases();
+    }
+
+    @Test
+    public void createsCurrentSchema() {
+        helper = new PFASQLiteHelper(context);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        assertEquals(CURRENT_VERSION, db.getVersion());
+        assertEquals("TEXT", columnType(db, PFASQLiteHelper.TABLE_DATA_EX, PFASQLiteHelper.KEY_IMAGE_EX));
+        assertTrue(tableExists(db, ChangeTracker.TABLE_CHANGE_LOG));
+        assertTrue(tableExists(db, RecordTracker.TABLE_RECORDS));
+    }
+
+    @Test
+    public void upgradesFromVersion1() {
+        SQLiteDatabase old = createDatabase(1);
+        createVersion1Tables(old);
+        insertData(old, "x'89504e47'");
+        old.close();
+
+        helper = new PFASQLiteHelper(context);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        assertEquals(CURRENT_VERSION, db.getVersion());
+        // images were stored as blobs and could not be carried over
+        assertEquals("TEXT", columnType(db, PFASQLiteHelper.TABLE_DATA_EX, PFASQLiteHelper.KEY_IMAGE_EX));
+        assertEquals("", helper.getExercise(1).getImage().toString());
+        assertData();
+        assertFalse(tableExists(db, PFASQLiteHelper.TABLE_DATA_EX + "_old"));
+    }
+
+    @Test
+    public void upgradesFromVersion2() {
+        SQLiteDatabase old = createDatabase(2);
+        createVersion2Tables(old);
+        insertData(old, "'content://images/1'");
+        old.close();
+
+        helper = new PFASQLiteHelper(context);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        assertEquals(CURRENT_VERSION, db.getVersion());
+        assertEquals("content://images/1", helper.getExercise(1).getImage().toString());
+        assertData();
+    }
+
+    @Test
+    public void upgradeFromVersion2DropsLeftoverCopy() {
+        SQLiteDatabase old = createDatabase(2);
+        createVersion2Tables(old);
+        // earlier versions of patch 1 did not drop the source of the copy
+        old.execSQL("CREATE TABLE " + PFASQLiteHelper.TABLE_DATA_EX + "_old(id INTEGER PRIMARY KEY, name TEXT, description TEXT, image BLOB);");
+        insertData(old, "'content://images/1'");
+        old.close();
+
+        helper = new PFASQLiteHelper(context);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        assertEquals(CURRENT_VERSION, db.getVersion());
+        assertFalse(tableExists(db, PFASQLiteHelper.TABLE_DATA_EX + "_old"));
+        assertData();
+    }
+
+    @Test
+    public void upgradedDatabaseHasRecords() {
+        SQLiteDatabase old = createDatabase(2);
+        createVersion2Tables(old);
+        insertData(old, "NULL");
+        old.close();
+
+        helper = new PFASQLiteHelper(context);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        // the records are derived from the sessions when the table is created
+        assertEquals(1, new RecordTracker(db).read().getWorkoutDays());
+        assertEquals(300, new RecordTracker(db).read().getTotalTime());
+    }
+
+    @Test
+    public void upgradesLargeDatabaseFromVersion1() {
+        SQLiteDatabase old = createDatabase(1);
+        createVersion1Tables(old);
+        insertLargeData(old, true);
+        old.close();
+
+        assertLargeUpgrade(1);
+    }
+
+    @Test
+    public void upgradesLargeDatabaseFromVersion2() {
+        SQLiteDatabase old = createDatabase(2);
+        createVersion2Tables(old);
+        insertLargeData(old, false);
+        old.close();
+
+        assertLargeUpgrade(2);
+    }
+
+    @Test
+    public void opensLargeDatabaseOfCurrentVersion() {
+        helper = new PFASQLiteHelper(context);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        insertLargeData(db, false);
+        // the sessions were inserted behind the back of the records
+        new RecordTracker(db).rebuild();
+        helper.close();
+
+        assertLargeUpgrade(CURRENT_VERSION);
+    }
+
+    /**
+     * Opens the database written by {@link #insertLargeData}, which runs the patches from the
+     * given version on, and checks the time it took and that no row was lost.
+     */
+    private void assertLargeUpgrade(int fromVersion) {
+        long start = System.nanoTime();
+        helper = new PFASQLiteHelper(context);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        long millis = (System.nanoTime() - start) / 1000000;
+        Log.i(LOG_TAG, "Opened large database of version " + fromVersion + " in " + millis + " ms");
+
+        assertEquals(CURRENT_VERSION, db.getVersion());
+        assertTrue("Upgrade from version " + fromVersion + " took " + millis + " ms", millis < MAX_UPGRADE_MS);
+        assertEquals(LARGE_EXERCISES, DatabaseUtils.queryNumEntries(db, PFASQLiteHelper.TABLE_DATA_EX));
+        assertEquals(LARGE_EXERCISE_SETS, DatabaseUtils.queryNumEntries(db, PFASQLiteHelper.TABLE_DATA_ES));
+        assertEquals(LARGE_HISTORY_DAYS, DatabaseUtils.queryNumEntries(db, PFASQLiteHelper.TABLE_DATA));
+        assertFalse(tableExists(db, PFASQLiteHelper.TABLE_DATA_EX + "_old"));
+        assertEquals("Exercise " + LARGE_EXERCISES, helper.getExercise(LARGE_EXERCISES).getName());
+        assertEquals(Arrays.asList(1, 2, 3), helper.getExerciseSet(1).getExercises());
+        assertEquals(LARGE_HISTORY_DAYS, new RecordTracker(db).read().getWorkoutDays());
+    }
+
+    /**
+     * Inserts {@link #LARGE_EXERCISES} exercises, {@link #LARGE_EXERCISE_SETS} sets and a
+     * workout session for each of {@link #LARGE_HISTORY_DAYS} days up to {@link #DAY}.
+     *
+     * @param blobImages true for version 1, which stored the pictures as blobs
+     */
+    private static void insertLargeData(SQLiteDatabase db, boolean blobImages) {
+        db.beginTransaction();
+        try {
+            SQLiteStatement insert = db.compileStatement("INSERT INTO EXERCISES(id, name, description, image) VALUES (?, ?, ?, ?)");
+            for (int i = 1; i <= LARGE_EXERCISES; i++) {
+                insert.bindLong(1, i);
+                insert.bindString(2, "Exercise " + i);
+                insert.bindString(3, "Description of exercise " + i);
+                if (blobImages) {
+                    insert.bindBlob(4, new byte[]{(byte) 0x89, 'P', 'N', 'G'});
+                } else {
+                    insert.bindString(4, "content://images/" + i);
+                }
+                insert.executeInsert();
+            }
+            insert.close();
+
+            insert = db.compileStatement("INSERT INTO EXERCISE_SET(id, name, exercises) VALUES (?, ?, ?)");
+            for (int i = 1; i <= LARGE_EXERCISE_SETS; i++) {
+                insert.bindLong(1, i);
+                insert.bindString(2, "Set " + i);
+                insert.bindString(3, "{\"uniqueArrays\":[" + i + "," + (i + 1) + "," + (i + 2) + "]}");
+                insert.executeInsert();
+            }
+            insert.close();
+
+            insert = db.compileStatement("INSERT INTO WORKOUT_SESSION(id, workoutTime, calories, time) VALUES (?, 300, 25, 0)");
+            for (int i = 0; i < LARGE_HISTORY_DAYS; i++) {
+                insert.bindLong(1, DateKeys.addDays(DAY, -i));
+                insert.executeInsert();
+            }
+            insert.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private SQLiteDatabase createDatabase(int version) {
+        File file = context.getDatabasePath(PFASQLiteHelper.DATABASE_NAME);
+        file.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        db.setVersion(version);
+        return db;
+    }
+
+    private static void createVersion1Tables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE EXERCISE_SET(id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, exercises TEXT);");
+        db.execSQL("CREATE TABLE EXERCISES(id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, description TEXT, image BLOB);");
+        db.execSQL("CREATE TABLE WORKOUT_SESSION(id INTEGER PRIMARY KEY AUTOINCREMENT, workoutTime LONG, calories INTEGER, time INTEGER);");
+    }
+
+    private static void createVersion2Tables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE EXERCISE_SET(id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, exercises TEXT);");
+        db.execSQL("CREATE TABLE EXERCISES(id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, description TEXT, image TEXT);");
+        db.execSQL("CREATE TABLE WORKOUT_SESSION(id INTEGER PRIMARY KEY AUTOINCREMENT, workoutTime LONG, calories INTEGER, time INTEGER);");
+    }
+
+    private static void insertData(SQLiteDatabase db, String image) {
+        db.execSQL("INSERT INTO EXERCISES(id, name, description, image) VALUES (1, 'Squats', 'Bend your knees', " + image + ");");
+        db.execSQL("INSERT INTO EXERCISES(id, name, description, image) VALUES (2, 'Push-ups', 'Keep your back straight', NULL);");
+        db.execSQL("INSERT INTO EXERCISE_SET(id, name, exercises) VALUES (1, 'Morning', '{\"uniqueArrays\":[2,1]}');");
+        db.execSQL("INSERT INTO WORKOUT_SESSION(id, workoutTime, calories, time) VALUES (" + DAY + ", 300, 25, 0);");
+    }
+
+    private void assertData() {
+        Exercise squats = helper.getExercise(1);
+        assertEquals("Squats", squats.getName());
+        assertEquals("Bend your knees", squats.getDescription());
+        assertEquals("Push-ups", helper.getExercise(2).getName());
+
+        ExerciseSet set = helper.getExerciseSet(1);
+        assertEquals("Morning", set.getName());
+        assertEquals(Arrays.asList(2, 1), set.getExercises());
+
+        WorkoutSessionData session = helper.getWorkoutData(DAY);
+        assertEquals(300, session.getWORKOUTTIME());
+        assertEquals(25, session.getCALORIES());
+    }
+
+    private static boolean tableExists(SQLiteDatabase db, String table) {
+        return DatabaseUtils.longForQuery(db, "SELECT count(*) FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[]{table}) > 0;
+    }
+
+    private static String columnType(SQLiteDatabase db, String table, String column) {
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                if (column.equals(cursor.getString(cursor.getColumnIndex("name")))) {
+                    return cursor.getString(cursor.getColumnIndex("type"));
+                }
+            }
+            return null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void deleteDatabases() {
+        context.deleteDatabase(PFASQLiteHelper.DATABASE_NAME);
+        context.deleteDatabase(ExerciseSearchIndex.DATABASE_NAME);
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.secuso.privacyfriendlycircuittraining.helpers.DateKeys;
+import org.secuso.privacyfriendlycircuittraining.models.WorkoutRecords;
+import org.secuso.privacyfriendlycircuittraining.models.WorkoutSessionData;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Saves workout sessions the way the timer does and checks the session of the day and the
+ * records, in particular for the first session of a day.
+ *
+ * @version 20261019
+ */
+@RunWith(AndroidJUnit4.class)
+public class WorkoutStatisticsTest {
+
+    private static final int DAY = 20251231;
+
+    private Context context;
+    private PFASQLiteHelper helper;
+    private SQLiteDatabase database;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        deleteDatabases();
+        helper = new PFASQLiteHelper(context);
+        database = helper.getWritableDatabase();
+        new RecordTracker(database).rebuild();
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        deleteDatabases();
+    }
+
+    @Test
+    public void firstSessionOfDayCreatesSession() {
+        helper.addToWorkoutData(DAY, 600, 50);
+
+        WorkoutSessionData session = helper.getWorkoutData(DAY);
+        assertEquals(DAY, session.getID());
+        assertEquals(600, session.getWORKOUTTIME());
+        assertEquals(50, session.getCALORIES());
+
+        WorkoutRecords records = new RecordTracker(database).read();
+        assertEquals(600, records.getTotalTime());
+        assertEquals(50, records.getTotalCalories());
+        assertEquals(1, records.getWorkoutDays());
+        assertEquals(DAY, records.getLastDay());
+        assertTrue(database.isOpen());
+    }
+
+    @Test
+    public void secondSessionAddsToDay() {
+        helper.addToWorkoutData(DAY, 600, 50);
+        helper.addToWorkoutData(DAY, 300, 20);
+
+        WorkoutSessionData session = helper.getWorkoutData(DAY);
+        assertEquals(900, session.getWORKOUTTIME());
+        assertEquals(70, session.getCALORIES());
+
+        WorkoutRecords records = new RecordTracker(database).read();
+        assertEquals(900, records.getTotalTime());
+        assertEquals(1, records.getWorkoutDays());
+        assertEquals(900, records.getBestDayTime());
+    }
+
+    @Test
+    public void firstSessionOfNextDayContinuesStreak() {
+        int nextDay = DateKeys.addDays(DAY, 1);
+        helper.addToWorkoutData(DAY, 600, 50);
+        helper.addToWorkoutData(nextDay, 300, 20);
+
+        assertEquals(300, helper.getWorkoutData(nextDay).getWORKOUTTIME());
+        WorkoutRecords records = new RecordTracker(database).read();
+        assertEquals(900, records.getTotalTime());
+        assertEquals(2, records.getWorkoutDays());
+        assertEquals(nextDay, records.getLastDay());
+        assertEquals(2, records.getCurrentStreak());
+        // the records match a rebuild from the sessions
+        RecordTracker tracker = new RecordTracker(database);
+        tracker.rebuild();
+        assertEquals(records.getTotalTime(), tracker.read().getTotalTime());
+        assertEquals(records.getCurrentStreak(), tracker.read().getCurrentStreak());
+    }
+
+    @Test
+    public void helpersKeepConnectionOpenInTransaction() {
+        database.beginTransaction();
+        try {
+            helper.addWorkoutDataWithID(new WorkoutSessionData(DAY, 60, 5));
+            helper.deleteWorkoutData(new WorkoutSessionData(DAY, 60, 5));
+            helper.addWorkoutDataWithID(new WorkoutSessionData(DAY, 120, 10));
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        assertTrue(database.isOpen());
+        assertEquals(120, helper.getWorkoutData(DAY).getWORKOUTTIME());
+    }
+
+    private void deleteDatabases() {
+        context.deleteDatabase(PFASQLiteHelper.DATABASE_NAME);
+        context.deleteDatabase(ExerciseSearchIndex.DATABASE_NAME);
+    }
+}
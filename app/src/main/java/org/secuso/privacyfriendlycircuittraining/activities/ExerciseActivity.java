@@ -24,17 +24,20 @@ import android.os.Bundle;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import androidx.drawerlayout.widget.DrawerLayout;
 import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.widget.SearchView;
 import androidx.recyclerview.widget.DefaultItemAnimator;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.CheckBox;
 import android.widget.LinearLayout;
 
 import org.secuso.privacyfriendlycircuittraining.R;
 import org.secuso.privacyfriendlycircuittraining.adapters.ExerciseAdapter;
-import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
 import org.secuso.privacyfriendlycircuittraining.fragments.ExerciseDialogFragment;
 import org.secuso.privacyfriendlycircuittraining.models.Exercise;
 
@@ -50,6 +53,9 @@ import java.util.List;
 
 public class ExerciseActivity extends BaseActivity implements View.OnLongClickListener{
 
+    // number of not yet visible rows at which the next page is requested
+    private static final int PREFETCH_DISTANCE = 20;
+
     private List<Exercise> exerciseList = new ArrayList<>();
     private RecyclerView recyclerView;
     private ExerciseAdapter mAdapter;
@@ -60,7 +66,12 @@ public class ExerciseActivity extends BaseActivity implements View.OnLongClickLi
     private boolean is_in_delete_mode = false;
     private boolean is_in_picker_mode = false;
     private ArrayList<Exercise> selection_list = new ArrayList<>();
-    private PFASQLiteHelper db = new PFASQLiteHelper(this);
+    private PFARepository repository = null;
+    // id of an added exercise that is scrolled to as soon as it is loaded, -1 if none
+    private int scrollToExerciseId = -1;
+    private List<Exercise> allExercises = new ArrayList<>();
+    private String searchQuery = "";
+    private PFARepository.PagedLiveData<Exercise> exercisePages;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -71,8 +82,7 @@ public class ExerciseActivity extends BaseActivity implements View.OnLongClickLi
 
         setContentView(R.layout.activity_exercise);
 
-        // TODO: Database calls on main thread?! This should be changed
-        exerciseList = db.getAllExercise();
+        repository = PFARepository.getInstance(this);
 
         recyclerView = (RecyclerView) findViewById(R.id.recyclerView_ex);
         recyclerView.setHasFixedSize(true);
@@ -84,6 +94,16 @@ public class ExerciseActivity extends BaseActivity implements View.OnLongClickLi
         //mLayoutManager.setStackFromEnd(true);
         recyclerView.setAdapter(mAdapter);
 
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (searchQuery.isEmpty() && layoutManager.findLastVisibleItemPosition() >= mAdapter.getItemCount() - PREFETCH_DISTANCE) {
+                    exercisePages.loadMore();
+                }
+            }
+        });
+
         newListFab = (FloatingActionButton) findViewById(R.id.fab_new_list_ex);
         deleteFab = (FloatingActionButton) findViewById(R.id.fab_delete_item_ex);
         acceptFab = (FloatingActionButton) findViewById(R.id.fab_accept_item_ex);
@@ -100,6 +120,25 @@ public class ExerciseActivity extends BaseActivity implements View.OnLongClickLi
         noListsLayout.setVisibility(View.VISIBLE);
         setNoExererciseMessage();
 
+        exercisePages = repository.getExercisePages();
+        exercisePages.observe(this, exercises -> {
+            allExercises = exercises;
+            if (searchQuery.isEmpty()) {
+                showExercises(exercises);
+            } else {
+                search();
+            }
+            if (scrollToExerciseId != -1) {
+                for (int i = 0; i < exerciseList.size(); i++) {
+                    if (exerciseList.get(i).getID() == scrollToExerciseId) {
+                        scrollToExerciseId = -1;
+                        recyclerView.getLayoutManager().scrollToPosition(i);
+                        break;
+                    }
+                }
+            }
+        });
+
         newListFab.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
@@ -120,10 +159,7 @@ public class ExerciseActivity extends BaseActivity implements View.OnLongClickLi
                 builder.setPositiveButton(R.string.delete, new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        for(Exercise ex : selection_list){
-                            db.deleteExercise(ex);
-                        }
-                        mAdapter.updateAdapter(selection_list);
+                        repository.deleteExercises(selection_list);
                         clearActionMode();
                         setNoExererciseMessage();
                     }
@@ -183,18 +219,62 @@ public class ExerciseActivity extends BaseActivity implements View.OnLongClickLi
     }
 
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_exercise, menu);
+
+        MenuItem searchItem = menu.findItem(R.id.action_search_exercise);
+        final SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint(getString(R.string.search_exercises));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                searchQuery = newText.trim();
+                if (searchQuery.isEmpty()) {
+                    showExercises(allExercises);
+                } else {
+                    search();
+                }
+                return true;
+            }
+        });
+        return true;
+    }
+
+    private void search() {
+        final String query = searchQuery;
+        repository.searchExercises(query, exercises -> {
+            // drop results of queries the user has already typed past
+            if (query.equals(searchQuery)) {
+                showExercises(exercises);
+            }
+        });
+    }
+
+    private void showExercises(List<Exercise> exercises) {
+        exerciseList = exercises;
+        mAdapter.setExercises(exercises);
+        setNoExererciseMessage();
+    }
+
     public void addExercise(Exercise exercise) {
-        exerciseList.add(exercise);
-        ArrayList<Exercise> empty = new ArrayList<>();
-        mAdapter.updateAdapter(empty);
-        recyclerView.getLayoutManager().scrollToPosition(exerciseList.size()-1);
+        repository.addExercise(exercise, id -> {
+            if (id != -1) {
+                // the new exercise is appended after all pages that are not loaded yet
+                scrollToExerciseId = id.intValue();
+                exercisePages.loadAll();
+            }
+        });
     }
 
-    public void updateExercise(int position, Exercise exercise){
-        exerciseList.set(position, exercise);
-        ArrayList<Exercise> empty = new ArrayList<>();
-        mAdapter.updateAdapter(empty);
-        mAdapter.notifyItemChanged(position);
+    public void updateExercise(Exercise exercise){
+        repository.updateExercise(exercise);
     }
 
 
@@ -27,15 +27,16 @@ import android.view.View;
 import android.widget.CheckBox;
 import android.widget.LinearLayout;
 
-import org.json.JSONException;
 import org.secuso.privacyfriendlycircuittraining.R;
 import org.secuso.privacyfriendlycircuittraining.adapters.ExerciseSetAdapter;
-import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
 import org.secuso.privacyfriendlycircuittraining.fragments.ExerciseSetDialogFragment;
 import org.secuso.privacyfriendlycircuittraining.models.ExerciseSet;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Exercise Sets view
@@ -46,6 +47,11 @@ import java.util.List;
 
 public class ExerciseSetActivity extends BaseActivity implements View.OnLongClickListener{
 
+    // number of not yet visible rows at which the next page is requested
+    private static final int PREFETCH_DISTANCE = 20;
+    // number of exercise thumbnails shown per set
+    private static final int THUMBNAILS_PER_SET = 6;
+
     private List<ExerciseSet> exerciseSetsList = new ArrayList<>();
     private RecyclerView recyclerView;
     private ExerciseSetAdapter mAdapter;
@@ -54,7 +60,10 @@ public class ExerciseSetActivity extends BaseActivity implements View.OnLongClic
     private LinearLayout noListsLayout;
     private boolean is_in_action_mode = false;
     private ArrayList<ExerciseSet> selection_list = new ArrayList<>();
-    private PFASQLiteHelper db = new PFASQLiteHelper(this);
+    private PFARepository repository = null;
+    // id of an added exercise set that is scrolled to as soon as it is loaded, -1 if none
+    private int scrollToExerciseSetId = -1;
+    private PFARepository.PagedLiveData<ExerciseSet> exerciseSetPages;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -62,7 +71,7 @@ public class ExerciseSetActivity extends BaseActivity implements View.OnLongClic
 
         setContentView(R.layout.activity_exercisesets);
 
-        exerciseSetsList = db.getAllExerciseSet();
+        repository = PFARepository.getInstance(this);
 
         recyclerView = (RecyclerView) findViewById(R.id.recyclerView);
         recyclerView.setHasFixedSize(true);
@@ -74,6 +83,16 @@ public class ExerciseSetActivity extends BaseActivity implements View.OnLongClic
         //mLayoutManager.setStackFromEnd(true);
         recyclerView.setAdapter(mAdapter);
 
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (layoutManager.findLastVisibleItemPosition() >= mAdapter.getItemCount() - PREFETCH_DISTANCE) {
+                    exerciseSetPages.loadMore();
+                }
+            }
+        });
+
         newListFab = (FloatingActionButton) findViewById(R.id.fab_new_list);
         deleteFab = (FloatingActionButton) findViewById(R.id.fab_delete_item);
         noListsLayout = (LinearLayout) findViewById(R.id.no_lists_layout);
@@ -82,6 +101,23 @@ public class ExerciseSetActivity extends BaseActivity implements View.OnLongClic
         noListsLayout.setVisibility(View.VISIBLE);
         setNoExererciseSetsMessage();
 
+        exerciseSetPages = repository.getExerciseSetPages();
+        exerciseSetPages.observe(this, exerciseSets -> {
+            exerciseSetsList = exerciseSets;
+            mAdapter.setExerciseSets(exerciseSets);
+            loadExerciseImages(exerciseSets);
+            setNoExererciseSetsMessage();
+            if (scrollToExerciseSetId != -1) {
+                for (int i = 0; i < exerciseSetsList.size(); i++) {
+                    if (exerciseSetsList.get(i).getID() == scrollToExerciseSetId) {
+                        scrollToExerciseSetId = -1;
+                        recyclerView.getLayoutManager().scrollToPosition(i);
+                        break;
+                    }
+                }
+            }
+        });
+
         newListFab.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
@@ -103,10 +139,7 @@ public class ExerciseSetActivity extends BaseActivity implements View.OnLongClic
                         .setPositiveButton(R.string.delete, new DialogInterface.OnClickListener() {
                             @Override
                             public void onClick(DialogInterface dialog, int which) {
-                                for(ExerciseSet es : selection_list){
-                                    db.deleteExerciseSet(es);
-                                }
-                                mAdapter.updateAdapter(selection_list);
+                                repository.deleteExerciseSets(selection_list);
                                 clearActionMode();
                                 setNoExererciseSetsMessage();
                             }
@@ -117,21 +150,30 @@ public class ExerciseSetActivity extends BaseActivity implements View.OnLongClic
     }
 
 
+    /**
+     * Loads the exercises shown as thumbnails of the loaded sets.
+     */
+    private void loadExerciseImages(List<ExerciseSet> exerciseSets) {
+        Set<Integer> ids = new HashSet<>();
+        for (ExerciseSet es : exerciseSets) {
+            List<Integer> exercises = es.getExercises();
+            ids.addAll(exercises.subList(0, Math.min(THUMBNAILS_PER_SET, exercises.size())));
+        }
+        repository.getExercises(new ArrayList<>(ids), exercises -> mAdapter.setExercises(exercises));
+    }
+
     public void addExerciseSet(String name, ArrayList<Integer> exercises){
-        int lastId = (int) db.addExerciseSet(new ExerciseSet(0, name, exercises));
-        exerciseSetsList.add(new ExerciseSet(lastId, name, exercises));
-        ArrayList<ExerciseSet> empty = new ArrayList<>();
-        mAdapter.updateAdapter(empty);
-        recyclerView.getLayoutManager().scrollToPosition(exerciseSetsList.size()-1);
+        repository.addExerciseSet(new ExerciseSet(0, name, exercises), id -> {
+            if (id != -1) {
+                // the new set is appended after all pages that are not loaded yet
+                scrollToExerciseSetId = id.intValue();
+                exerciseSetPages.loadAll();
+            }
+        });
     }
 
-    public void updateExerciseSet(int position, int id, String name, ArrayList<Integer> exercises) throws JSONException {
-        ExerciseSet temp = new ExerciseSet(id, name, exercises);
-        db.updateExerciseSet(temp);
-        exerciseSetsList.get(position).setName(name);
-        ArrayList<ExerciseSet> empty = new ArrayList<>();
-        mAdapter.updateAdapter(empty);
-        mAdapter.notifyItemChanged(position);
+    public void updateExerciseSet(int id, String name, ArrayList<Integer> exercises) {
+        repository.updateExerciseSet(new ExerciseSet(id, name, exercises));
     }
 
 
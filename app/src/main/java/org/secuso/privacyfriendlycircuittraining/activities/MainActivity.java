@@ -37,7 +37,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import org.secuso.privacyfriendlycircuittraining.R;
-import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
 import org.secuso.privacyfriendlycircuittraining.fragments.GrantExactAlarmPermissionDialogFragment;
 import org.secuso.privacyfriendlycircuittraining.helpers.NotificationHelper;
 import org.secuso.privacyfriendlycircuittraining.models.ExerciseSet;
@@ -91,7 +91,7 @@ public class MainActivity extends BaseActivity {
 
     private Spinner exerciseSetSpinner;
     private Switch workoutMode;
-    private final PFASQLiteHelper db = new PFASQLiteHelper(this);
+    private List<ExerciseSet> exerciseSetslist = new ArrayList<>();
     ArrayList<Integer> exerciseIds = null;
     ArrayList<Integer> ExerciseIdsForRounds = null;
 
@@ -163,8 +163,6 @@ public class MainActivity extends BaseActivity {
             showPersonalizationAlert();
         }
 
-        final List<ExerciseSet> exerciseSetslist = db.getAllExerciseSet();
-
         workoutMode.setOnCheckedChangeListener((buttonView, isChecked) -> {
             isExerciseMode = isChecked;
             workoutModeSwitchState = isChecked;
@@ -191,13 +189,23 @@ public class MainActivity extends BaseActivity {
         });
         exerciseIds = new ArrayList<>();
         final List<String> exerciseSetsNames = new ArrayList<>();
-        for (ExerciseSet ex : exerciseSetslist) {
-            exerciseSetsNames.add(ex.getName());
-        }
-        ArrayAdapter<String> dataAdapter = new ArrayAdapter<>(this,
+        final ArrayAdapter<String> dataAdapter = new ArrayAdapter<>(this,
                 android.R.layout.simple_spinner_item, exerciseSetsNames);
         dataAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         exerciseSetSpinner.setAdapter(dataAdapter);
+        PFARepository.getInstance(this).getAllExerciseSet().observe(this, exerciseSets -> {
+            exerciseSetslist = exerciseSets;
+            exerciseSetsNames.clear();
+            for (ExerciseSet ex : exerciseSetslist) {
+                exerciseSetsNames.add(ex.getName());
+            }
+            dataAdapter.notifyDataSetChanged();
+            int pos = exerciseSetSpinner.getSelectedItemPosition();
+            if (pos >= 0 && pos < exerciseSetslist.size()) {
+                setsPerRound = exerciseSetslist.get(pos).getNumber();
+                exerciseIds = exerciseSetslist.get(pos).getExercises();
+            }
+        });
         exerciseSetSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             public void onItemSelected(AdapterView<?> parent, View view, int pos, long id) {
                 setsPerRound = exerciseSetslist.get(pos).getNumber();
@@ -15,28 +15,43 @@
 package org.secuso.privacyfriendlycircuittraining.activities;
 
 import android.annotation.TargetApi;
+import android.app.Activity;
 import android.app.AlarmManager;
+import android.app.AlertDialog;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.res.Configuration;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.Preference.OnPreferenceClickListener;
 import android.preference.PreferenceActivity;
+import android.preference.PreferenceCategory;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
 import android.preference.SwitchPreference;
 import androidx.appcompat.app.ActionBar;
+import android.util.Log;
 import android.view.MenuItem;
+import android.widget.Toast;
 
+import org.secuso.privacyfriendlycircuittraining.BuildConfig;
 import org.secuso.privacyfriendlycircuittraining.R;
+import org.secuso.privacyfriendlycircuittraining.backup.BackupRestorer;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
+import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
 import org.secuso.privacyfriendlycircuittraining.fragments.GrantExactAlarmPermissionDialogFragment;
 import org.secuso.privacyfriendlycircuittraining.helpers.NotificationHelper;
 import org.secuso.privacyfriendlycircuittraining.tutorial.PrefManager;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * A {@link PreferenceActivity} that presents a set of application settings. On
@@ -306,12 +321,31 @@ public class SettingsActivity extends AppCompatPreferenceActivity {
 
     @TargetApi(Build.VERSION_CODES.HONEYCOMB)
     public static class StatisticsPreferenceFragment extends PreferenceFragment {
+        private static final int REQUEST_MERGE_BACKUP = 1;
+
         @Override
         public void onCreate(Bundle savedInstanceState) {
             super.onCreate(savedInstanceState);
             addPreferencesFromResource(R.xml.pref_statistics);
             setHasOptionsMenu(true);
 
+            findPreference(getString(R.string.pref_merge_backup)).setOnPreferenceClickListener(new OnPreferenceClickListener() {
+                @Override
+                public boolean onPreferenceClick(Preference preference) {
+                    Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                    intent.addCategory(Intent.CATEGORY_OPENABLE);
+                    intent.setType("*/*");
+                    startActivityForResult(intent, REQUEST_MERGE_BACKUP);
+                    return true;
+                }
+            });
+
+            // the database timings are a debugging aid only
+            if (!BuildConfig.DEBUG) {
+                PreferenceCategory category = (PreferenceCategory) findPreference(getString(R.string.pref_statistics_category));
+                category.removePreference(findPreference(getString(R.string.pref_database_stats)));
+            }
+
             // Bind the summaries of EditText/List/Dialog/Ringtone preferences
             // to their values. When their values change, their summaries are
             // updated to reflect the new value, per the Android Design
@@ -319,6 +353,69 @@ public class SettingsActivity extends AppCompatPreferenceActivity {
             //bindPreferenceSummaryToValue(findPreference("example_text"));
         }
 
+        @Override
+        public void onActivityResult(int requestCode, int resultCode, Intent data) {
+            if (requestCode == REQUEST_MERGE_BACKUP && resultCode == Activity.RESULT_OK && data != null && data.getData() != null) {
+                chooseTablesToMerge(data.getData());
+            } else {
+                super.onActivityResult(requestCode, resultCode, data);
+            }
+        }
+
+        private void chooseTablesToMerge(final Uri backup) {
+            AlertDialog.Builder dialog = new AlertDialog.Builder(getActivity());
+            dialog.setTitle(getString(R.string.pref_merge_backup_title));
+            dialog.setItems(R.array.pref_merge_backup_choices, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    Set<String> tables = new HashSet<>();
+                    if (which != 1) {
+                        tables.addAll(BackupRestorer.EXERCISE_LIBRARY);
+                    }
+                    if (which != 0) {
+                        tables.addAll(BackupRestorer.HISTORY);
+                    }
+                    mergeBackup(getActivity().getApplicationContext(), backup, tables);
+                }
+            });
+            dialog.show();
+        }
+
+        /**
+         * Merges the tables of the backup into the live database on the database thread. The
+         * restorer writes through its own connection, so the one of the repository is closed
+         * first; the restorer resets the repository afterwards, see DatabaseReplacedReceiver.
+         */
+        private static void mergeBackup(final Context context, final Uri backup, final Set<String> tables) {
+            PFARepository.getInstance(context).execute(new PFARepository.Operation<Boolean>() {
+                @Override
+                public Boolean run(PFASQLiteHelper db) {
+                    db.close();
+                    InputStream input = null;
+                    try {
+                        input = context.getContentResolver().openInputStream(backup);
+                        return input != null && new BackupRestorer(tables).restoreBackup(context, input);
+                    } catch (IOException e) {
+                        Log.e("SettingsActivity", "Could not open " + backup, e);
+                        return false;
+                    } finally {
+                        if (input != null) {
+                            try {
+                                input.close();
+                            } catch (IOException ignored) {
+                            }
+                        }
+                    }
+                }
+            }, new PFARepository.Callback<Boolean>() {
+                @Override
+                public void onResult(Boolean merged) {
+                    Toast.makeText(context, merged ? R.string.pref_merge_backup_success : R.string.pref_merge_backup_failure,
+                            Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+
         @Override
         public boolean onOptionsItemSelected(MenuItem item) {
             int id = item.getItemId();
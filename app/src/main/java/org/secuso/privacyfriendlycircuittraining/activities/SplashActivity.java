@@ -21,6 +21,7 @@ import android.os.Bundle;
 import androidx.appcompat.app.AppCompatActivity;
 
 import org.secuso.privacyfriendlycircuittraining.R;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
 import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
 import org.secuso.privacyfriendlycircuittraining.models.Exercise;
 import org.secuso.privacyfriendlycircuittraining.models.ExerciseSet;
@@ -37,44 +38,48 @@ import java.util.ArrayList;
 
 public class SplashActivity extends AppCompatActivity {
 
-    private final PFASQLiteHelper db = new PFASQLiteHelper(this);
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        final String packageName = this.getPackageName();
+        PFARepository repository = PFARepository.getInstance(this);
+
         PrefManager.performMigrations(getBaseContext());
         if (PrefManager.isFirstTimeLaunch(getBaseContext())) {
             //add two example exercises
+            repository.execute(db -> {
+                Uri ic_squat = Uri.parse("android.resource://" + packageName + "/" + R.drawable.ic_exercise_squat);
+                Uri ic_pushup = Uri.parse("android.resource://" + packageName + "/" + R.drawable.ic_exercise_pushup);
+                Exercise defaultExercise1 = new Exercise(0, "Squat", "Example description", ic_squat);
+                Exercise defaultExercise2 = new Exercise(0, "Pushup", "Example description", ic_pushup);
+                ArrayList<Integer> tmp = new ArrayList<>();
+                tmp.add((int) db.addExercise(defaultExercise1));
+                tmp.add((int) db.addExercise(defaultExercise2));
+                ExerciseSet defaultExerciseSet = new ExerciseSet(0, "Example", tmp);
 
-            Uri ic_squat = Uri.parse("android.resource://" + this.getPackageName() + "/" + R.drawable.ic_exercise_squat);
-            Uri ic_pushup = Uri.parse("android.resource://" + this.getPackageName() + "/" + R.drawable.ic_exercise_pushup);
-            Exercise defaultExercise1 = new Exercise(0, "Squat", "Example description", ic_squat);
-            Exercise defaultExercise2 = new Exercise(0, "Pushup", "Example description", ic_pushup);
-            db.addExercise(defaultExercise1);
-            db.addExercise(defaultExercise2);
-            ArrayList<Integer> tmp = new ArrayList<>();
-            tmp.add(db.getAllExercise().get(0).getID());
-            tmp.add(db.getAllExercise().get(1).getID());
-            ExerciseSet defaultExerciseSet = new ExerciseSet(0, "Example", tmp);
-
-            db.addExerciseSet(defaultExerciseSet);
-            Intent mainIntent = new Intent(SplashActivity.this, TutorialActivity.class);
-            SplashActivity.this.startActivity(mainIntent);
-            SplashActivity.this.finish();
+                db.addExerciseSet(defaultExerciseSet);
+                return null;
+            }, result -> {
+                Intent mainIntent = new Intent(SplashActivity.this, TutorialActivity.class);
+                SplashActivity.this.startActivity(mainIntent);
+                SplashActivity.this.finish();
+            }, PFASQLiteHelper.TABLE_DATA_EX, PFASQLiteHelper.TABLE_DATA_ES);
         } else {
             //Update icons for default exercises
-            Exercise defaultExercise1 = db.getExercise(1);
-            Exercise defaultExercise2 = db.getExercise(2);
-            if (defaultExercise1 != null && defaultExercise1.getImage() != null && defaultExercise1.getImage().toString().startsWith("android.resource://" + this.getPackageName() + "/")) {
-                defaultExercise1.setImage(Uri.parse("android.resource://" + this.getPackageName() + "/" + R.drawable.ic_exercise_squat));
-                db.updateExercise(defaultExercise1);
-            }
-            if (defaultExercise2 != null && defaultExercise2.getImage() != null && defaultExercise2.getImage().toString().startsWith("android.resource://" + this.getPackageName() + "/")) {
-                defaultExercise2.setImage(Uri.parse("android.resource://" + this.getPackageName() + "/" + R.drawable.ic_exercise_pushup));
-                db.updateExercise(defaultExercise2);
-            }
-
+            repository.execute(db -> {
+                Exercise defaultExercise1 = db.getExercise(1);
+                Exercise defaultExercise2 = db.getExercise(2);
+                if (defaultExercise1 != null && defaultExercise1.getImage() != null && defaultExercise1.getImage().toString().startsWith("android.resource://" + packageName + "/")) {
+                    defaultExercise1.setImage(Uri.parse("android.resource://" + packageName + "/" + R.drawable.ic_exercise_squat));
+                    db.updateExercise(defaultExercise1);
+                }
+                if (defaultExercise2 != null && defaultExercise2.getImage() != null && defaultExercise2.getImage().toString().startsWith("android.resource://" + packageName + "/")) {
+                    defaultExercise2.setImage(Uri.parse("android.resource://" + packageName + "/" + R.drawable.ic_exercise_pushup));
+                    db.updateExercise(defaultExercise2);
+                }
+                return null;
+            }, null, PFASQLiteHelper.TABLE_DATA_EX);
 
             Intent mainIntent = new Intent(SplashActivity.this, MainActivity.class);
             SplashActivity.this.startActivity(mainIntent);
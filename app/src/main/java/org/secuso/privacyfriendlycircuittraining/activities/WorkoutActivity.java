@@ -42,8 +42,7 @@ import com.bumptech.glide.Glide;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import org.secuso.privacyfriendlycircuittraining.R;
-import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
-import org.secuso.privacyfriendlycircuittraining.models.Exercise;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
 import org.secuso.privacyfriendlycircuittraining.services.TimerService;
 import org.secuso.privacyfriendlycircuittraining.tutorial.PrefManager;
 
@@ -83,7 +82,7 @@ public class WorkoutActivity extends AppCompatActivity {
     private TimerService timerService = null;
     private boolean serviceBound = false;
 
-    private final PFASQLiteHelper db = new PFASQLiteHelper(this);
+    private PFARepository repository = null;
 
 
     @Override
@@ -92,6 +91,7 @@ public class WorkoutActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
 
         setContentView(R.layout.activity_workout);
+        repository = PFARepository.getInstance(this);
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
@@ -240,10 +240,7 @@ public class WorkoutActivity extends AppCompatActivity {
                 }
                 if (intent.getIntExtra("exercise_id", -1) != -1) {
                     int exerciseID = intent.getIntExtra("exercise_id", -1);
-                    Exercise exercise = db.getExercise(exerciseID);
-                    workoutName.setText(exercise.getName());
-                    workoutDescription.setText(exercise.getDescription());
-                    Glide.with(context).load(exercise.getImage()).into(workoutImage);
+                    showExercise(exerciseID);
                 }
 
                 if (intent.getLongExtra("new_timer", 0) != 0) {
@@ -411,10 +408,7 @@ public class WorkoutActivity extends AppCompatActivity {
             progressBar.setAlpha(1.0f);
 
             if (timerService.getisExerciseMode()) {
-                Exercise exercise = db.getExercise(currentExerciseId);
-                workoutName.setText(exercise.getName());
-                workoutDescription.setText(exercise.getDescription());
-                Glide.with(this).load(exercise.getImage()).into(workoutImage);
+                showExercise(currentExerciseId);
             }
 
             if (isPaused) {
@@ -431,6 +425,22 @@ public class WorkoutActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Loads the exercise in the background and shows its name, description and image
+     *
+     * @param exerciseId ID of the exercise to show
+     */
+    private void showExercise(int exerciseId) {
+        repository.getExercise(exerciseId, exercise -> {
+            if (isDestroyed()) {
+                return;
+            }
+            workoutName.setText(exercise.getName());
+            workoutDescription.setText(exercise.getDescription());
+            Glide.with(WorkoutActivity.this).load(exercise.getImage()).into(workoutImage);
+        });
+    }
+
 
     /**
      * Build and show an AlertDialog for when the workout is canceled
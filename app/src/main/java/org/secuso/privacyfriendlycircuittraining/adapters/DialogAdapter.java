@@ -38,7 +38,6 @@ import android.widget.TextView;
 import com.bumptech.glide.Glide;
 
 import org.secuso.privacyfriendlycircuittraining.R;
-import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
 import org.secuso.privacyfriendlycircuittraining.fragments.ExerciseSetDialogFragment;
 import org.secuso.privacyfriendlycircuittraining.models.Exercise;
 
@@ -48,13 +47,11 @@ public class DialogAdapter extends RecyclerView.Adapter<DialogAdapter.MyViewHold
 
     private ArrayList<Exercise> exerciseList;
     private ExerciseSetDialogFragment exerciseDialog;
-    private PFASQLiteHelper db = null;
     private Context ctx;
 
     public DialogAdapter(ArrayList<Exercise> exerciseList, Context ctx) {
         this.exerciseList = exerciseList;
         this.ctx = ctx;
-        db = new PFASQLiteHelper(ctx);
     }
 
     @NonNull
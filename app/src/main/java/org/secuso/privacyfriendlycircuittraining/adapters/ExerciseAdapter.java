@@ -34,29 +34,22 @@ import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
 
-import org.json.JSONException;
 import org.secuso.privacyfriendlycircuittraining.R;
 import org.secuso.privacyfriendlycircuittraining.activities.ExerciseActivity;
-import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
 import org.secuso.privacyfriendlycircuittraining.fragments.ExerciseDialogFragment;
 import org.secuso.privacyfriendlycircuittraining.models.Exercise;
-import org.secuso.privacyfriendlycircuittraining.models.ExerciseSet;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 public class ExerciseAdapter extends RecyclerView.Adapter<ExerciseAdapter.MyViewHolder> {
 
     private List<Exercise> exerciseList;
     private ExerciseActivity exerciseActivity;
-    private PFASQLiteHelper db = null;
     private Context context;
 
     public ExerciseAdapter(List<Exercise> exerciseList, Context ctx) {
         this.exerciseList = exerciseList;
         exerciseActivity = (ExerciseActivity) ctx;
-        db = new PFASQLiteHelper(ctx);
         context = ctx;
     }
 
@@ -91,31 +84,11 @@ public class ExerciseAdapter extends RecyclerView.Adapter<ExerciseAdapter.MyView
     }
 
 
-    public void updateAdapter(ArrayList<Exercise> list){
-        exerciseList = db.getAllExercise();
-        for(Exercise ex : list){
-            exerciseList.remove(ex);
-            updateExerciseSets(list);
-        }
+    public void setExercises(List<Exercise> list){
+        exerciseList = list;
         notifyDataSetChanged();
     }
 
-    private void updateExerciseSets(ArrayList<Exercise> list){
-        List<ExerciseSet> tmp = db.getAllExerciseSet();
-        for(ExerciseSet es : tmp){
-            for(Exercise ex: list)
-                if(es.getExercises().contains(ex.getID())){
-                    ExerciseSet es_tmp = es;
-                    es_tmp.getExercises().removeAll(Collections.singleton(ex.getID()));
-                    try {
-                        db.updateExerciseSet(es_tmp);
-                    } catch (JSONException e) {
-                        e.printStackTrace();
-                    }
-                }
-        }
-    }
-
 
     public class MyViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener{
         private TextView name, description;
@@ -144,7 +117,7 @@ public class ExerciseAdapter extends RecyclerView.Adapter<ExerciseAdapter.MyView
                 exerciseActivity.prepareSelection(v, getAdapterPosition());
             else {
                 if (!ExerciseDialogFragment.isOpened()) {
-                    ExerciseDialogFragment listDialogFragment = ExerciseDialogFragment.newEditInstance(getAdapterPosition(), exerciseList.get(getAdapterPosition()).getID());
+                    ExerciseDialogFragment listDialogFragment = ExerciseDialogFragment.newEditInstance(exerciseList.get(getAdapterPosition()));
                     listDialogFragment.show(exerciseActivity.getSupportFragmentManager(), "DialogFragment");
                 }
             }
@@ -22,6 +22,7 @@ package org.secuso.privacyfriendlycircuittraining.adapters;
  */
 
 import android.content.Context;
+import android.net.Uri;
 import androidx.cardview.widget.CardView;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -35,24 +36,24 @@ import com.bumptech.glide.Glide;
 
 import org.secuso.privacyfriendlycircuittraining.R;
 import org.secuso.privacyfriendlycircuittraining.activities.ExerciseSetActivity;
-import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
 import org.secuso.privacyfriendlycircuittraining.fragments.ExerciseSetDialogFragment;
+import org.secuso.privacyfriendlycircuittraining.models.Exercise;
 import org.secuso.privacyfriendlycircuittraining.models.ExerciseSet;
 
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ExerciseSetAdapter extends RecyclerView.Adapter<ExerciseSetAdapter.MyViewHolder> {
 
     private List<ExerciseSet> exerciseSetsList;
     private ExerciseSetActivity exerciseSetActivity;
-    private PFASQLiteHelper db = null;
+    private Map<Integer, Uri> exerciseImages = new HashMap<>();
     private Context context;
 
     public ExerciseSetAdapter(List<ExerciseSet> exerciseSetsList, Context ctx) {
         this.exerciseSetsList = exerciseSetsList;
         exerciseSetActivity = (ExerciseSetActivity) ctx;
-        db = new PFASQLiteHelper(ctx);
         context = ctx;
     }
 
@@ -90,7 +91,7 @@ public class ExerciseSetAdapter extends RecyclerView.Adapter<ExerciseSetAdapter.
                 return;
             }
             else {
-                Glide.with(context).load(db.getExercise(ex).getImage()).into(holder.imageViews[i]);
+                Glide.with(context).load(exerciseImages.get(ex)).into(holder.imageViews[i]);
             }
             i++;
         }
@@ -109,10 +110,15 @@ public class ExerciseSetAdapter extends RecyclerView.Adapter<ExerciseSetAdapter.
     }
 
 
-    public void updateAdapter(ArrayList<ExerciseSet> list){
-        exerciseSetsList = db.getAllExerciseSet();
-        for(ExerciseSet es : list){
-            exerciseSetsList.remove(es);
+    public void setExerciseSets(List<ExerciseSet> list){
+        exerciseSetsList = list;
+        notifyDataSetChanged();
+    }
+
+    public void setExercises(List<Exercise> exercises){
+        exerciseImages = new HashMap<>();
+        for(Exercise ex : exercises){
+            exerciseImages.put(ex.getID(), ex.getImage());
         }
         notifyDataSetChanged();
     }
@@ -152,7 +158,7 @@ public class ExerciseSetAdapter extends RecyclerView.Adapter<ExerciseSetAdapter.
                 exerciseSetActivity.prepareSelection(v, getAdapterPosition());
             else {
                 if (!ExerciseSetDialogFragment.isOpened()) {
-                    ExerciseSetDialogFragment listDialogFragment = ExerciseSetDialogFragment.newEditInstance(getAdapterPosition());
+                    ExerciseSetDialogFragment listDialogFragment = ExerciseSetDialogFragment.newEditInstance(exerciseSetsList.get(getAdapterPosition()).getID());
                     listDialogFragment.show(exerciseSetActivity.getSupportFragmentManager(), "DialogFragment");
                 }
             }
@@ -15,9 +15,11 @@
 package org.secuso.privacyfriendlycircuittraining.adapters;
 
 import android.content.Context;
+import android.content.res.Resources;
 import androidx.core.content.ContextCompat;
 import androidx.appcompat.widget.PopupMenu;
 import androidx.recyclerview.widget.RecyclerView;
+import android.util.DisplayMetrics;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -45,15 +47,22 @@ import com.github.mikephil.charting.interfaces.datasets.ILineDataSet;
 import com.github.mikephil.charting.utils.ViewPortHandler;
 
 import org.secuso.privacyfriendlycircuittraining.R;
+import org.secuso.privacyfriendlycircuittraining.helpers.DateKeys;
 import org.secuso.privacyfriendlycircuittraining.models.ActivityChart;
 import org.secuso.privacyfriendlycircuittraining.models.ActivityDayChart;
+import org.secuso.privacyfriendlycircuittraining.models.ActivityHeatmap;
 import org.secuso.privacyfriendlycircuittraining.models.ActivitySummary;
+import org.secuso.privacyfriendlycircuittraining.models.ChartSeries;
+import org.secuso.privacyfriendlycircuittraining.models.WorkoutRecords;
+import org.secuso.privacyfriendlycircuittraining.views.HeatmapView;
 
 import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
 
 /**
  * This adapter is used for ReportView.
@@ -64,8 +73,15 @@ import java.util.Map;
 public class ReportAdapter extends RecyclerView.Adapter<ReportAdapter.ViewHolder> {
     private static final int TYPE_SUMMARY = 0;
     private static final int TYPE_CHART = 2;
+    private static final int TYPE_HEATMAP = 3;
+    private static final int TYPE_RECORDS = 4;
+    private static final String VALUE_FORMAT_PATTERN = "###,###,##0.0";
+    // narrowest space a bar gets, longer series are summed up into bins
+    private static final float MIN_BAR_SLOT_DP = 8;
     private List<Object> mItems;
     private OnItemClickListener mItemClickListener;
+    private DoubleValueFormatter mValueFormatter;
+    private PreparedChart mPreparedChart;
 
     /**
      * Creates a new Adapter for RecyclerView
@@ -88,6 +104,16 @@ public class ReportAdapter extends RecyclerView.Adapter<ReportAdapter.ViewHolder
                         .inflate(R.layout.card_activity_bar_chart, parent, false);
                 vh = new CombinedChartViewHolder(v);
                 break;
+            case TYPE_HEATMAP:
+                v = LayoutInflater.from(parent.getContext())
+                        .inflate(R.layout.card_activity_heatmap, parent, false);
+                vh = new HeatmapViewHolder(v);
+                break;
+            case TYPE_RECORDS:
+                v = LayoutInflater.from(parent.getContext())
+                        .inflate(R.layout.card_workout_records, parent, false);
+                vh = new RecordsViewHolder(v);
+                break;
             case TYPE_SUMMARY:
             default:
                 v = LayoutInflater
@@ -107,66 +133,39 @@ public class ReportAdapter extends RecyclerView.Adapter<ReportAdapter.ViewHolder
                 ActivityChart barChartData = (ActivityChart) mItems.get(position);
                 CombinedChartViewHolder barChartViewHolder = (CombinedChartViewHolder) holder;
                 barChartViewHolder.mTitleTextView.setText(barChartData.getTitle());
-                int barChartI = 0;
-                ArrayList<String> barChartXValues = new ArrayList<>();
-                Map<String, Double> barChartDataMap;
-                String barChartLabel;
-                if (barChartData.getDisplayedDataType() == null) {
-                    barChartDataMap = barChartData.getTime();
-                    barChartLabel = barChartViewHolder.context.getString(R.string.report_workout_time);
-                } else {
-                    switch (barChartData.getDisplayedDataType()) {
-                        case CALORIES:
-                            barChartDataMap = barChartData.getCalories();
-                            barChartLabel = barChartViewHolder.context.getString(R.string.report_calories);
-                            break;
-                        case TIME:
-                            barChartDataMap = barChartData.getTime();
-                            barChartLabel = barChartViewHolder.context.getString(R.string.report_workout_time);
-                            break;
-                        default:
-                            barChartDataMap = barChartData.getTime();
-                            barChartLabel = barChartViewHolder.context.getString(R.string.report_workout_time);
-                            break;
-                    }
-                }
-                List<BarEntry> dataEntries = new ArrayList<>();
-                for (Map.Entry<String, Double> dataEntry : barChartDataMap.entrySet()) {
-                    barChartXValues.add(barChartI, dataEntry.getKey());
-                    if (dataEntry.getValue() != null) {
-                        float val = dataEntry.getValue().floatValue();
-                        dataEntries.add(new BarEntry(barChartI, val));
-                    }
-                    barChartI++;
+                PreparedChart prepared = getPreparedChart(barChartData.getSeries(), barChartViewHolder.context);
+                CombinedData combinedData = barChartData.getDisplayedDataType() == ActivityDayChart.DataType.CALORIES
+                        ? prepared.calories : prepared.time;
+                if (barChartViewHolder.mChart.getData() == combinedData) {
+                    // e.g. a rebind after the summary changed, nothing to do for the chart
+                    break;
                 }
-                BarDataSet barDataSet = new BarDataSet(dataEntries, barChartLabel);
-                String formatPattern = "###,###,##0.0";
-                barDataSet.setValueFormatter(new DoubleValueFormatter(formatPattern));
-
-                ArrayList<ILineDataSet> lineDataSets = new ArrayList<>();
-
-                // make sure, that the first and last entry are fully displayed
-                Entry start = new Entry(0, 0);
-                Entry end = new Entry(barChartI - 1, 0);
-                LineDataSet chartLineDataSet = new LineDataSet(Arrays.asList(start, end), "");
-                chartLineDataSet.setAxisDependency(YAxis.AxisDependency.LEFT);
-                chartLineDataSet.setDrawCircles(false);
-                chartLineDataSet.setColor(ContextCompat.getColor(barChartViewHolder.context, R.color.transparent), 0);
-                chartLineDataSet.setDrawValues(false);
-                lineDataSets.add(chartLineDataSet);
-
-                CombinedData combinedData = new CombinedData();
-                BarData barData = new BarData(barDataSet);
-                barData.setBarWidth(0.5f);
-                combinedData.setData(barData);
-                combinedData.setData(new LineData(lineDataSets));
-                barDataSet.setColor(ContextCompat.getColor(barChartViewHolder.context, R.color.colorPrimary));
                 barChartViewHolder.mChart.setData(combinedData);
-                barChartViewHolder.mChart.getXAxis().setValueFormatter(new ArrayListAxisValueFormatter(barChartXValues));
+                barChartViewHolder.mChart.getXAxis().setValueFormatter(prepared.axisValueFormatter);
                 barChartViewHolder.mChart.invalidate();
-
-                Legend legend = barChartViewHolder.mChart.getLegend();
-                legend.setYOffset(20f);
+                break;
+            case TYPE_HEATMAP:
+                ActivityHeatmap heatmap = (ActivityHeatmap) mItems.get(position);
+                HeatmapViewHolder heatmapViewHolder = (HeatmapViewHolder) holder;
+                heatmapViewHolder.mTitleTextView.setText(heatmap.getTitle());
+                heatmapViewHolder.mHeatmapView.setHeatmap(heatmap);
+                break;
+            case TYPE_RECORDS:
+                WorkoutRecords records = (WorkoutRecords) mItems.get(position);
+                RecordsViewHolder recordsViewHolder = (RecordsViewHolder) holder;
+                Resources resources = recordsViewHolder.itemView.getResources();
+                int currentStreak = records.getActiveStreak(DateKeys.today());
+                recordsViewHolder.mCurrentStreakTextView.setText(
+                        resources.getQuantityString(R.plurals.records_days, currentStreak, currentStreak));
+                recordsViewHolder.mLongestStreakTextView.setText(resources.getQuantityString(R.plurals.records_days,
+                        records.getLongestStreak(), records.getLongestStreak()));
+                recordsViewHolder.mBestDayTextView.setText(
+                        formatRecord(records.getBestDay(), "dd.MM.yy", records.getBestDayTime()));
+                recordsViewHolder.mBestWeekTextView.setText(
+                        formatRecord(records.getBestWeek(), "dd.MM.yy", records.getBestWeekTime()));
+                recordsViewHolder.mBestMonthTextView.setText(
+                        formatRecord(records.getBestMonth() * 100 + 1, "MMM yy", records.getBestMonthTime()));
+                recordsViewHolder.mWorkoutDaysTextView.setText(String.valueOf(records.getWorkoutDays()));
                 break;
             case TYPE_SUMMARY:
                 ActivitySummary summaryData = (ActivitySummary) mItems.get(position);
@@ -178,6 +177,56 @@ public class ReportAdapter extends RecyclerView.Adapter<ReportAdapter.ViewHolder
         }
     }
 
+    /**
+     * Returns the chart data of the given series, it is only built when the series changed.
+     * Both data types are built at once, so switching between them only swaps the data.
+     * Series with more points than bars fit on the screen are downsampled first, so the
+     * drawing cost depends on the screen width and not on the length of the history.
+     */
+    private PreparedChart getPreparedChart(ChartSeries series, Context context) {
+        if (mPreparedChart == null || mPreparedChart.series != series) {
+            if (mValueFormatter == null) {
+                mValueFormatter = new DoubleValueFormatter(VALUE_FORMAT_PATTERN);
+            }
+            DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+            ChartSeries shown = series.downsample((int) (metrics.widthPixels / (MIN_BAR_SLOT_DP * metrics.density)));
+            // make sure, that the first and last entry are fully displayed
+            Entry start = new Entry(-1, 0);
+            Entry end = new Entry(shown.size(), 0);
+            LineDataSet chartLineDataSet = new LineDataSet(Arrays.asList(start, end), "");
+            chartLineDataSet.setAxisDependency(YAxis.AxisDependency.LEFT);
+            chartLineDataSet.setDrawCircles(false);
+            chartLineDataSet.setColor(ContextCompat.getColor(context, R.color.transparent), 0);
+            chartLineDataSet.setDrawValues(false);
+            ArrayList<ILineDataSet> lineDataSets = new ArrayList<>();
+            lineDataSets.add(chartLineDataSet);
+            LineData lineData = new LineData(lineDataSets);
+
+            mPreparedChart = new PreparedChart(series,
+                    createChartData(shown.getTime(), context.getString(R.string.report_workout_time), lineData, context),
+                    createChartData(shown.getCalories(), context.getString(R.string.report_calories), lineData, context),
+                    new SeriesAxisValueFormatter(shown));
+        }
+        return mPreparedChart;
+    }
+
+    private CombinedData createChartData(float[] values, String label, LineData lineData, Context context) {
+        List<BarEntry> dataEntries = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            dataEntries.add(new BarEntry(i, values[i]));
+        }
+        BarDataSet barDataSet = new BarDataSet(dataEntries, label);
+        barDataSet.setValueFormatter(mValueFormatter);
+        barDataSet.setColor(ContextCompat.getColor(context, R.color.colorPrimary));
+
+        CombinedData combinedData = new CombinedData();
+        BarData barData = new BarData(barDataSet);
+        barData.setBarWidth(0.5f);
+        combinedData.setData(barData);
+        combinedData.setData(lineData);
+        return combinedData;
+    }
+
     // Return the size of your dataset (invoked by the layout manager)
     @Override
     public int getItemCount() {
@@ -192,6 +241,10 @@ public class ReportAdapter extends RecyclerView.Adapter<ReportAdapter.ViewHolder
             return TYPE_SUMMARY;
         } else if (item instanceof ActivityChart) {
             return TYPE_CHART;
+        } else if (item instanceof ActivityHeatmap) {
+            return TYPE_HEATMAP;
+        } else if (item instanceof WorkoutRecords) {
+            return TYPE_RECORDS;
         } else {
             return -1;
         }
@@ -266,6 +319,38 @@ public class ReportAdapter extends RecyclerView.Adapter<ReportAdapter.ViewHolder
         }
     }
 
+    public class HeatmapViewHolder extends ViewHolder {
+
+        public TextView mTitleTextView;
+        public HeatmapView mHeatmapView;
+
+        public HeatmapViewHolder(View itemView) {
+            super(itemView);
+            mTitleTextView = (TextView) itemView.findViewById(R.id.period);
+            mHeatmapView = (HeatmapView) itemView.findViewById(R.id.heatmap);
+        }
+    }
+
+    public class RecordsViewHolder extends ViewHolder {
+
+        public TextView mCurrentStreakTextView;
+        public TextView mLongestStreakTextView;
+        public TextView mBestDayTextView;
+        public TextView mBestWeekTextView;
+        public TextView mBestMonthTextView;
+        public TextView mWorkoutDaysTextView;
+
+        public RecordsViewHolder(View itemView) {
+            super(itemView);
+            mCurrentStreakTextView = (TextView) itemView.findViewById(R.id.current_streak);
+            mLongestStreakTextView = (TextView) itemView.findViewById(R.id.longest_streak);
+            mBestDayTextView = (TextView) itemView.findViewById(R.id.best_day);
+            mBestWeekTextView = (TextView) itemView.findViewById(R.id.best_week);
+            mBestMonthTextView = (TextView) itemView.findViewById(R.id.best_month);
+            mWorkoutDaysTextView = (TextView) itemView.findViewById(R.id.workout_days);
+        }
+    }
+
     public abstract class AbstractChartViewHolder extends ViewHolder implements PopupMenu.OnMenuItemClickListener {
 
         public TextView mTitleTextView;
@@ -335,22 +420,29 @@ public class ReportAdapter extends RecyclerView.Adapter<ReportAdapter.ViewHolder
             mChart.setDrawOrder(new CombinedChart.DrawOrder[]{
                     CombinedChart.DrawOrder.BAR, CombinedChart.DrawOrder.BUBBLE, CombinedChart.DrawOrder.CANDLE, CombinedChart.DrawOrder.LINE, CombinedChart.DrawOrder.SCATTER
             });
+            Legend legend = mChart.getLegend();
+            legend.setYOffset(20f);
         }
     }
 
-    public class ArrayListAxisValueFormatter implements AxisValueFormatter {
-        private List<String> values;
+    /**
+     * Formats the labels of the x axis on demand, only the visible ones are ever created.
+     * Positions outside of the series are the padding of the chart and stay empty.
+     */
+    public class SeriesAxisValueFormatter implements AxisValueFormatter {
+        private ChartSeries series;
 
-        public ArrayListAxisValueFormatter(List<String> values) {
-            this.values = values;
+        public SeriesAxisValueFormatter(ChartSeries series) {
+            this.series = series;
         }
 
         @Override
         public String getFormattedValue(float value, AxisBase axis) {
-            if (this.values.size() <= (int) value || (int) value < 0) {
-                return "--";
+            int index = Math.round(value);
+            if (index < 0 || index >= this.series.size()) {
+                return "";
             }
-            return this.values.get((int) value);
+            return this.series.getLabel(index);
         }
 
         @Override
@@ -359,6 +451,24 @@ public class ReportAdapter extends RecyclerView.Adapter<ReportAdapter.ViewHolder
         }
     }
 
+    /**
+     * Chart data of one series for both data types.
+     */
+    private static class PreparedChart {
+        private final ChartSeries series;
+        private final CombinedData time;
+        private final CombinedData calories;
+        private final SeriesAxisValueFormatter axisValueFormatter;
+
+        PreparedChart(ChartSeries series, CombinedData time, CombinedData calories,
+                      SeriesAxisValueFormatter axisValueFormatter) {
+            this.series = series;
+            this.time = time;
+            this.calories = calories;
+            this.axisValueFormatter = axisValueFormatter;
+        }
+    }
+
     public class DoubleValueFormatter implements ValueFormatter {
 
         private DecimalFormat mFormat;
@@ -377,6 +487,20 @@ public class ReportAdapter extends RecyclerView.Adapter<ReportAdapter.ViewHolder
         }
     }
 
+    /**
+     * @param day first day of the record in the format yyyyMMdd
+     * @return the period and the workout time of the record or a dash if there is none
+     */
+    private String formatRecord(int day, String pattern, int seconds) {
+        if (seconds == 0) {
+            return "-";
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(day / 10000, day / 100 % 100 - 1, day % 100);
+        return new SimpleDateFormat(pattern, Locale.getDefault()).format(calendar.getTime()) + "  " + formatTime(seconds);
+    }
+
     private String formatTime(long seconds){
         long hr = seconds/3600;
         long min = (seconds/60)%60;
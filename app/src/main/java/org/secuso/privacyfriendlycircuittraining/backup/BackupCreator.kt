@@ -1,20 +1,95 @@
 package org.secuso.privacyfriendlycircuittraining.backup
 
 import android.content.Context
+import android.database.sqlite.SQLiteDatabase
+import android.database.sqlite.SQLiteException
 import android.util.JsonWriter
 import android.util.Log
 import org.secuso.privacyfriendlybackup.api.backup.DatabaseUtil.getSupportSQLiteOpenHelper
 import org.secuso.privacyfriendlybackup.api.backup.DatabaseUtil.writeDatabase
 import org.secuso.privacyfriendlybackup.api.backup.PreferenceUtil.writePreferences
 import org.secuso.privacyfriendlybackup.api.pfa.IBackupCreator
+import org.secuso.privacyfriendlycircuittraining.database.ChangeTracker
 import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper
 import org.secuso.privacyfriendlycircuittraining.tutorial.PrefManager
 import java.io.OutputStream
 import java.io.OutputStreamWriter
+import java.util.UUID
+import java.util.zip.GZIPOutputStream
 
+/**
+ * Only the first backup of a chain contains the whole database. The following ones contain
+ * the rows changed since that full backup, tracked by [ChangeTracker], so a restore needs the
+ * full backup and the latest delta, not the whole chain. A new chain starts after [MAX_DELTAS]
+ * deltas or once the full backup is older than [MAX_CHAIN_AGE_MS]. The backup host therefore
+ * has to keep the last [MAX_DELTAS] + 1 backups or all backups of the last week;
+ * if it keeps fewer, only a full backup can be restored on its own.
+ *
+ * Backups are gzip compressed. The CRC-32 of the data is computed while it is written and
+ * stored at the end of the stream, where [BackupRestorer] checks it.
+ */
 class BackupCreator : IBackupCreator {
-    override fun writeBackup(context: Context, outputStream: OutputStream): Boolean {
+    override fun writeBackup(context: Context, backupStream: OutputStream): Boolean {
         Log.d(TAG, "createBackup() started")
+        val outputStream = GZIPOutputStream(backupStream, BUFFER_SIZE)
+        // not part of the preferences in the backup, it describes the backups of this device
+        val state = context.getSharedPreferences(BACKUP_STATE_PREFERENCES, Context.MODE_PRIVATE)
+        // opened directly, a PFASQLiteHelper would run its migrations and open hooks in this
+        // process while the app has the database open; the app creates the change log
+        val db = try {
+            SQLiteDatabase.openDatabase(context.getDatabasePath(PFASQLiteHelper.DATABASE_NAME).path,
+                    null, SQLiteDatabase.OPEN_READWRITE)
+        } catch (e: SQLiteException) {
+            Log.e(TAG, "Database not available", e)
+            return false
+        }
+        try {
+            val tracker = ChangeTracker(db)
+            var chain = state.getString(KEY_CHAIN, null)
+            val deltas = state.getInt(KEY_DELTAS, 0)
+            // chains written before deltas were cumulative have no start time and are replaced
+            val chainAge = System.currentTimeMillis() - state.getLong(KEY_CHAIN_START, 0)
+            // read before the backup, changes made while it is written go into the next delta again
+            val sequence = tracker.sequence
+
+            val delta = chain != null && chain == tracker.chain && deltas < MAX_DELTAS
+                    && chainAge in 0 until MAX_CHAIN_AGE_MS
+            val success = if (delta) {
+                writeDeltaBackup(context, outputStream, tracker, chain!!, state.getLong(KEY_SEQUENCE, 0), sequence)
+            } else {
+                chain = UUID.randomUUID().toString()
+                tracker.startChain(chain, sequence)
+                writeFullBackup(context, outputStream, PFASQLiteHelper.getImageUris(db))
+            }
+
+            if (success) {
+                // writes the trailer with the checksum
+                outputStream.close()
+                val editor = state.edit()
+                if (delta) {
+                    editor.putInt(KEY_DELTAS, deltas + 1)
+                } else {
+                    // the change log is kept until the next chain, every delta starts at this sequence
+                    editor.putString(KEY_CHAIN, chain)
+                        .putLong(KEY_SEQUENCE, sequence)
+                        .putLong(KEY_CHAIN_START, System.currentTimeMillis())
+                        .putInt(KEY_DELTAS, 0)
+                }
+                editor.apply()
+            }
+            return success
+        } catch (e: Exception) {
+            Log.e(TAG, "Error occurred", e)
+            return false
+        } finally {
+            db.close()
+        }
+    }
+
+    /**
+     * Writes the whole database, the pictures of the exercises and all preferences.
+     */
+    private fun writeFullBackup(context: Context, outputStream: OutputStream, imageUris: List<String>): Boolean {
         val outputStreamWriter = OutputStreamWriter(outputStream, Charsets.UTF_8)
         val writer = JsonWriter(outputStreamWriter)
         writer.setIndent("")
@@ -30,6 +105,10 @@ class BackupCreator : IBackupCreator {
             writeDatabase(writer, database)
             database.close()
 
+            Log.d(TAG, "Writing images")
+            writer.name("images")
+            ExerciseImageBackup(context).writeImages(writer, imageUris)
+
             Log.d(TAG, "Writing preferences")
             writer.name("preferences")
 
@@ -49,7 +128,55 @@ class BackupCreator : IBackupCreator {
         return true
     }
 
+    /**
+     * Writes the rows changed after the sequence number from, i.e. since the full backup of the
+     * chain, followed by the pictures of the changed exercises and all preferences.
+     */
+    private fun writeDeltaBackup(context: Context, outputStream: OutputStream, tracker: ChangeTracker,
+                                 chain: String, from: Long, to: Long): Boolean {
+        val writer = JsonWriter(OutputStreamWriter(outputStream, Charsets.UTF_8))
+        writer.setIndent("")
+
+        try {
+            writer.beginObject()
+
+            Log.d(TAG, "Writing changes $from..$to")
+            writer.name("delta")
+            tracker.writeDelta(writer, chain, from, to)
+
+            Log.d(TAG, "Writing images")
+            writer.name("images")
+            ExerciseImageBackup(context).writeImages(writer, tracker.getChangedImageUris(from))
+
+            Log.d(TAG, "Writing preferences")
+            writer.name("preferences")
+            PrefManager.performMigrations(context)
+            writePreferences(writer, PrefManager.getPreferences(context))
+
+            writer.endObject()
+            writer.close()
+        } catch (e: Exception) {
+            Log.e(TAG, "Error occurred", e)
+            return false
+        }
+
+        Log.d(TAG, "Delta backup created successfully")
+        return true
+    }
+
     companion object {
         const val TAG = "PFABackupCreator"
+
+        const val BACKUP_STATE_PREFERENCES = "backup_state"
+        private const val KEY_CHAIN = "chain"
+        private const val KEY_SEQUENCE = "sequence"
+        private const val KEY_DELTAS = "deltas"
+        private const val KEY_CHAIN_START = "chain_start"
+
+        // bound how long a full backup has to be kept, and the size of the deltas
+        const val MAX_DELTAS = 6
+        const val MAX_CHAIN_AGE_MS = 7L * 24 * 60 * 60 * 1000
+
+        const val BUFFER_SIZE = 8192
     }
 }
\ No newline at end of file
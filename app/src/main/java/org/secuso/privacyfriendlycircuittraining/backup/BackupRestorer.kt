@@ -1,22 +1,34 @@
 package org.secuso.privacyfriendlycircuittraining.backup
 
 import android.content.Context
+import android.content.Intent
 import android.content.SharedPreferences
+import android.database.sqlite.SQLiteDatabase
 import android.util.JsonReader
 import android.util.Log
+import androidx.annotation.VisibleForTesting
 import org.secuso.privacyfriendlybackup.api.backup.DatabaseUtil
-import org.secuso.privacyfriendlybackup.api.backup.FileUtil
 import org.secuso.privacyfriendlybackup.api.pfa.IBackupRestorer
 import org.secuso.privacyfriendlycircuittraining.R
+import org.secuso.privacyfriendlycircuittraining.database.ChangeTracker
+import org.secuso.privacyfriendlycircuittraining.database.DatabaseImporter
 import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper
+import org.secuso.privacyfriendlycircuittraining.receivers.DatabaseReplacedReceiver
 import org.secuso.privacyfriendlycircuittraining.tutorial.PrefManager
+import java.io.BufferedInputStream
+import java.io.File
 import java.io.IOException
 import java.io.InputStream
 import java.io.InputStreamReader
-import kotlin.system.exitProcess
+import java.util.zip.GZIPInputStream
 
-
-class BackupRestorer : IBackupRestorer {
+/**
+ * @param mergeTables if empty, the backup replaces the database and all preferences. Otherwise
+ * only these tables are merged into the live database, see [DatabaseImporter], and the
+ * preferences stay as they are; e.g. [EXERCISE_LIBRARY] or [HISTORY]. The backup service
+ * always replaces, merging is offered by the statistics settings for a backup file.
+ */
+class BackupRestorer(private val mergeTables: Set<String> = emptySet()) : IBackupRestorer {
     @Throws(IOException::class)
     private fun readDatabase(reader: JsonReader, context: Context) {
         reader.beginObject()
@@ -31,16 +43,15 @@ class BackupRestorer : IBackupRestorer {
         }
 
         Log.d(TAG, "Restoring database...")
-        val restoreDatabaseName = "restoreDatabase"
 
         // delete if file already exists
-        val restoreDatabaseFile = context.getDatabasePath(restoreDatabaseName)
+        val restoreDatabaseFile = context.getDatabasePath(RESTORE_DATABASE_NAME)
         if (restoreDatabaseFile.exists()) {
-            DatabaseUtil.deleteRoomDatabase(context, restoreDatabaseName)
+            DatabaseUtil.deleteRoomDatabase(context, RESTORE_DATABASE_NAME)
         }
 
         // create new restore database
-        val db = DatabaseUtil.getSupportSQLiteOpenHelper(context, restoreDatabaseName, version).writableDatabase
+        val db = DatabaseUtil.getSupportSQLiteOpenHelper(context, RESTORE_DATABASE_NAME, version).writableDatabase
 
         db.beginTransaction()
         db.version = version
@@ -52,17 +63,104 @@ class BackupRestorer : IBackupRestorer {
         db.close()
 
         reader.endObject()
+    }
 
-        // copy file to correct location
-        val actualDatabaseFile = context.getDatabasePath(PFASQLiteHelper.DATABASE_NAME)
+    /**
+     * Reads a delta backup. Nothing is written yet, see [applyDelta].
+     */
+    @Throws(IOException::class)
+    private fun readDelta(reader: JsonReader): ChangeTracker.Delta {
+        if (mergeTables.isNotEmpty()) {
+            throw IOException("A delta backup can not be merged")
+        }
+        Log.d(TAG, "Reading delta...")
+        return ChangeTracker.Delta.read(reader)
+    }
 
-        DatabaseUtil.deleteRoomDatabase(context, PFASQLiteHelper.DATABASE_NAME)
+    /**
+     * Applies a delta backup to the live database once the whole backup was read, so the
+     * write transaction is not held while the pictures are read. The full backup of its chain,
+     * or an older delta of the chain, has to be restored on this device first, see
+     * [ChangeTracker.applyDelta].
+     */
+    @Throws(IOException::class)
+    private fun applyDelta(context: Context, delta: ChangeTracker.Delta, images: ExerciseImageBackup) {
+        val db = SQLiteDatabase.openDatabase(context.getDatabasePath(PFASQLiteHelper.DATABASE_NAME).path,
+                null, SQLiteDatabase.OPEN_READWRITE)
+        try {
+            db.beginTransaction()
+            try {
+                ChangeTracker(db).applyDelta(delta)
+                images.rewriteUris(db)
+                db.setTransactionSuccessful()
+            } finally {
+                db.endTransaction()
+            }
+        } finally {
+            db.close()
+        }
+        Log.d(TAG, "Delta applied")
+    }
 
-        FileUtil.copyFile(restoreDatabaseFile, actualDatabaseFile)
+    /**
+     * Moves the restore database over the live one. Both are in the same directory, so the
+     * rename is atomic and nothing is copied: a connection still open on the old file keeps
+     * reading it until it is reopened, see [DatabaseReplacedReceiver].
+     */
+    @VisibleForTesting
+    @Throws(IOException::class)
+    internal fun replaceDatabase(context: Context, restoreDatabaseName: String) {
+        val restoreDatabaseFile = context.getDatabasePath(restoreDatabaseName)
+        val actualDatabaseFile = context.getDatabasePath(PFASQLiteHelper.DATABASE_NAME)
+        Log.d(TAG, "Peak disk usage: ${(restoreDatabaseFile.length() + actualDatabaseFile.length()) / 1024} KiB")
+
+        if (!restoreDatabaseFile.renameTo(actualDatabaseFile)) {
+            throw IOException("Could not replace ${actualDatabaseFile.name}")
+        }
+        // journals of the old file must not be applied to the new one
+        for (suffix in JOURNAL_SUFFIXES) {
+            File(actualDatabaseFile.path + suffix).delete()
+            File(restoreDatabaseFile.path + suffix).delete()
+        }
         Log.d(TAG, "Database restored")
+    }
 
-        // delete restore database
-        DatabaseUtil.deleteRoomDatabase(context, restoreDatabaseName)
+    /**
+     * Points the exercises of the restore database to the pictures restored from the backup.
+     */
+    private fun rewriteImageUris(context: Context, restoreDatabaseName: String, images: ExerciseImageBackup) {
+        val db = SQLiteDatabase.openDatabase(context.getDatabasePath(restoreDatabaseName).path,
+                null, SQLiteDatabase.OPEN_READWRITE)
+        try {
+            images.rewriteUris(db)
+        } finally {
+            db.close()
+        }
+    }
+
+    /**
+     * Imports the selected tables of the restore database into the live one in a single
+     * transaction. Workout sessions of the same day are added up, exercises that collide
+     * with existing ones get new ids. The caches of the app are reset by the broadcast sent
+     * after the restore.
+     */
+    private fun mergeDatabase(context: Context, restoreDatabaseName: String) {
+        Log.d(TAG, "Merging ${mergeTables.joinToString()}...")
+        val source = SQLiteDatabase.openDatabase(context.getDatabasePath(restoreDatabaseName).path,
+                null, SQLiteDatabase.OPEN_READONLY)
+        try {
+            val target = SQLiteDatabase.openDatabase(context.getDatabasePath(PFASQLiteHelper.DATABASE_NAME).path,
+                    null, SQLiteDatabase.OPEN_READWRITE)
+            try {
+                DatabaseImporter(target).importTables(source, mergeTables)
+            } finally {
+                target.close()
+            }
+        } finally {
+            source.close()
+            DatabaseUtil.deleteRoomDatabase(context, restoreDatabaseName)
+        }
+        Log.d(TAG, "Database merged")
     }
 
     @Throws(IOException::class)
@@ -118,32 +216,118 @@ class BackupRestorer : IBackupRestorer {
         return preferenceSet
     }
 
+    /**
+     * Nothing is changed before the whole backup was read: the restored database is only
+     * swapped in, the delta only applied and the preferences only written once the end of
+     * the stream and, for compressed backups, its checksum were verified.
+     */
     override fun restoreBackup(context: Context, restoreData: InputStream): Boolean {
+        val start = System.nanoTime()
+        var delta: ChangeTracker.Delta? = null
+        val images = ExerciseImageBackup(context)
         return try {
-            val isReader = InputStreamReader(restoreData)
-            val reader = JsonReader(isReader)
+            val input = openBackup(restoreData)
             val preferences = PrefManager.getPreferences(context).edit()
+            var restoredDatabase = false
+
+            val isReader = InputStreamReader(input)
+            val reader = JsonReader(isReader)
 
             // START
             reader.beginObject()
             while (reader.hasNext()) {
                 when (val type: String = reader.nextName()) {
-                    "database" -> readDatabase(reader, context)
+                    "database" -> {
+                        readDatabase(reader, context)
+                        restoredDatabase = true
+                    }
+                    "delta" -> delta = readDelta(reader)
+                    "images" -> images.readImages(reader)
                     "preferences" -> readPreferences(reader, preferences, context)
                     else -> throw RuntimeException("Can not parse type $type")
                 }
             }
             reader.endObject()
-            preferences.commit()
 
-            exitProcess(0)
+            verify(input)
+            if (restoredDatabase) {
+                rewriteImageUris(context, RESTORE_DATABASE_NAME, images)
+            }
+            delta?.let {
+                applyDelta(context, it, images)
+            }
+            if (mergeTables.isNotEmpty()) {
+                if (restoredDatabase) {
+                    mergeDatabase(context, RESTORE_DATABASE_NAME)
+                }
+            } else {
+                if (restoredDatabase) {
+                    replaceDatabase(context, RESTORE_DATABASE_NAME)
+                }
+                preferences.commit()
+            }
+
+            // the app process holds its own connection and caches
+            context.sendBroadcast(Intent(context, DatabaseReplacedReceiver::class.java))
+            Log.d(TAG, "Backup restored in ${(System.nanoTime() - start) / 1000000} ms")
+            true
         } catch (e: Exception) {
             e.printStackTrace()
+            DatabaseUtil.deleteRoomDatabase(context, RESTORE_DATABASE_NAME)
+            images.discard()
             false
         }
     }
 
+    /**
+     * Unwraps compressed backups. Older backups are not compressed and are read as they are.
+     */
+    private fun openBackup(restoreData: InputStream): BufferedInputStream {
+        val input = BufferedInputStream(restoreData)
+        val header = ByteArray(2)
+        input.mark(header.size)
+        val read = input.read(header)
+        input.reset()
+        if (read == header.size && header[0] == GZIP_MAGIC_0 && header[1] == GZIP_MAGIC_1) {
+            Log.d(TAG, "Backup is compressed")
+            return BufferedInputStream(GZIPInputStream(input, BackupCreator.BUFFER_SIZE))
+        }
+        return input
+    }
+
+    /**
+     * Reads the stream to its end. [GZIPInputStream] compares the checksum and the length
+     * in the trailer with the data it decompressed and throws if they differ.
+     */
+    @Throws(IOException::class)
+    private fun verify(input: InputStream) {
+        val buffer = ByteArray(BackupCreator.BUFFER_SIZE)
+        var trailing = 0L
+        while (true) {
+            val read = input.read(buffer)
+            if (read < 0) {
+                break
+            }
+            trailing += read
+        }
+        if (trailing > 0) {
+            Log.w(TAG, "Ignored $trailing bytes after the end of the backup")
+        }
+        Log.d(TAG, "Backup verified")
+    }
+
     companion object {
         const val TAG = "PFABackupRestorer"
+
+        @JvmField
+        val EXERCISE_LIBRARY = setOf(PFASQLiteHelper.TABLE_DATA_EX, PFASQLiteHelper.TABLE_DATA_ES)
+        @JvmField
+        val HISTORY = setOf(PFASQLiteHelper.TABLE_DATA)
+
+        private const val RESTORE_DATABASE_NAME = "restoreDatabase"
+        private val JOURNAL_SUFFIXES = arrayOf("-journal", "-wal", "-shm")
+
+        private const val GZIP_MAGIC_0 = 0x1f.toByte()
+        private const val GZIP_MAGIC_1 = 0x8b.toByte()
     }
 }
\ No newline at end of file
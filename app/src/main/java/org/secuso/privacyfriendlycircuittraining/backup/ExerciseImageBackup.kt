@@ -0,0 +1,190 @@
+package org.secuso.privacyfriendlycircuittraining.backup
+
+import android.content.ContentResolver
+import android.content.Context
+import android.database.sqlite.SQLiteDatabase
+import android.net.Uri
+import android.util.Base64
+import android.util.JsonReader
+import android.util.JsonWriter
+import android.util.Log
+import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.security.MessageDigest
+
+/**
+ * Bundles the pictures of exercises with a backup. A picture picked by the user is only
+ * referenced by a content uri, which does not exist on another device. Pictures that ship
+ * with the app are not bundled.
+ *
+ * Format: [{"uri": uri, "hash": SHA-256 of the content, "data": [Base64 chunks]}, ...]
+ * The data of equal pictures is only written for the first of their uris. Pictures are
+ * streamed in chunks, the memory use does not depend on their size or number.
+ */
+class ExerciseImageBackup(private val context: Context) {
+
+    // uri in the backup -> uri of the restored file
+    private val restoredUris = HashMap<String, String>()
+    private val createdFiles = ArrayList<File>()
+
+    @Throws(IOException::class)
+    fun writeImages(writer: JsonWriter, uris: Collection<String>) {
+        val writtenHashes = HashSet<String>()
+        var bytes = 0L
+
+        writer.beginArray()
+        for (uri in uris) {
+            val parsedUri = Uri.parse(uri)
+            if (parsedUri.scheme != ContentResolver.SCHEME_CONTENT && parsedUri.scheme != ContentResolver.SCHEME_FILE) {
+                continue
+            }
+            val hash = try {
+                hash(parsedUri)
+            } catch (e: Exception) {
+                // e.g. the picture was deleted or the permission to read it revoked
+                Log.w(TAG, "Skipping image $uri", e)
+                continue
+            }
+
+            writer.beginObject()
+            writer.name("uri").value(uri)
+            writer.name("hash").value(hash)
+            if (writtenHashes.add(hash)) {
+                writer.name("data")
+                writer.beginArray()
+                open(parsedUri).use { input ->
+                    val buffer = ByteArray(CHUNK_SIZE)
+                    while (true) {
+                        val read = input.read(buffer)
+                        if (read < 0) {
+                            break
+                        }
+                        writer.value(Base64.encodeToString(buffer, 0, read, Base64.NO_WRAP))
+                        bytes += read
+                    }
+                }
+                writer.endArray()
+            }
+            writer.endObject()
+        }
+        writer.endArray()
+        Log.d(TAG, "Wrote ${writtenHashes.size} images, $bytes bytes")
+    }
+
+    /**
+     * Writes the pictures to the app storage. The exercises point to them once
+     * [rewriteUris] was called.
+     */
+    @Throws(IOException::class)
+    fun readImages(reader: JsonReader) {
+        val directory = File(context.filesDir, IMAGE_DIRECTORY)
+        directory.mkdirs()
+
+        reader.beginArray()
+        while (reader.hasNext()) {
+            var uri: String? = null
+            var file: File? = null
+            reader.beginObject()
+            while (reader.hasNext()) {
+                when (val name = reader.nextName()) {
+                    "uri" -> uri = reader.nextString()
+                    "hash" -> {
+                        val hash = reader.nextString()
+                        if (!HASH_PATTERN.matches(hash)) {
+                            throw IOException("Invalid image hash $hash")
+                        }
+                        file = File(directory, hash)
+                    }
+                    "data" -> readData(reader, file ?: throw IOException("Image data before its hash"))
+                    else -> throw IOException("Unknown value $name")
+                }
+            }
+            reader.endObject()
+
+            if (uri == null || file == null || !file.exists()) {
+                throw IOException("Incomplete image $uri")
+            }
+            restoredUris[uri] = Uri.fromFile(file).toString()
+        }
+        reader.endArray()
+        Log.d(TAG, "Restored ${restoredUris.size} images")
+    }
+
+    @Throws(IOException::class)
+    private fun readData(reader: JsonReader, file: File) {
+        // the files are named by their content, an existing one is the same picture
+        if (file.exists()) {
+            reader.skipValue()
+            return
+        }
+        // written under another name first, so an interrupted restore leaves no truncated picture
+        val partial = File(file.path + ".part")
+        FileOutputStream(partial).use { output ->
+            reader.beginArray()
+            while (reader.hasNext()) {
+                output.write(Base64.decode(reader.nextString(), Base64.NO_WRAP))
+            }
+            reader.endArray()
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete()
+            throw IOException("Could not write ${file.name}")
+        }
+        createdFiles.add(file)
+    }
+
+    /**
+     * Points the exercises of the given database to the restored pictures.
+     */
+    fun rewriteUris(db: SQLiteDatabase) {
+        for ((uri, restoredUri) in restoredUris) {
+            PFASQLiteHelper.replaceImageUri(db, uri, restoredUri)
+        }
+    }
+
+    /**
+     * Deletes the pictures written by a restore that failed.
+     */
+    fun discard() {
+        for (file in createdFiles) {
+            file.delete()
+        }
+        createdFiles.clear()
+        restoredUris.clear()
+    }
+
+    @Throws(IOException::class)
+    private fun hash(uri: Uri): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        open(uri).use { input ->
+            val buffer = ByteArray(CHUNK_SIZE)
+            while (true) {
+                val read = input.read(buffer)
+                if (read < 0) {
+                    break
+                }
+                digest.update(buffer, 0, read)
+            }
+        }
+        return digest.digest().joinToString("") { "%02x".format(it) }
+    }
+
+    @Throws(IOException::class)
+    private fun open(uri: Uri): InputStream {
+        return context.contentResolver.openInputStream(uri) ?: throw IOException("Can not open $uri")
+    }
+
+    companion object {
+        const val TAG = "PFAExerciseImageBackup"
+
+        const val IMAGE_DIRECTORY = "exercise_images"
+
+        // every chunk is a Base64 string of its own
+        private const val CHUNK_SIZE = 48 * 1024
+
+        private val HASH_PATTERN = Regex("[0-9a-f]{64}")
+    }
+}
@@ -0,0 +1,389 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.KEY_IMAGE_EX;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.TABLE_DATA;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.TABLE_DATA_ES;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.TABLE_DATA_EX;
+
+/**
+ * Tracks which rows changed since the last full backup, so a backup can contain only those rows.
+ * <p>
+ * Triggers on the data tables append the id of every inserted, updated or deleted row to
+ * the change log. A backup chain starts with a full backup that stores the chain id and the
+ * current change sequence in the backup state table; every delta of the chain contains the
+ * rows changed since that full backup. It can be applied on top of the full backup or of an
+ * older delta of the chain, so a restore needs two backups at most.
+ * <p>
+ * Delta format:
+ * {"chain": id, "from": sequence, "to": sequence, "tables": {"table": {"upsert": [rows], "delete": [ids]}}}
+ *
+ * @version 20261019
+ */
+public class ChangeTracker {
+
+    private static final String LOG_TAG = "ChangeTracker";
+
+    public static final String TABLE_CHANGE_LOG = "CHANGE_LOG";
+    public static final String TABLE_BACKUP_STATE = "BACKUP_STATE";
+
+    private static final String KEY_SEQUENCE = "seq";
+    private static final String KEY_TABLE = "table_name";
+    private static final String KEY_ROW = "row_id";
+    private static final String KEY_CHAIN = "chain";
+    private static final String KEY_CHAIN_SEQUENCE = "sequence";
+
+    static final String[] TRACKED_TABLES = {TABLE_DATA, TABLE_DATA_EX, TABLE_DATA_ES};
+
+    private final SQLiteDatabase db;
+
+    public ChangeTracker(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    /**
+     * Creates the change log, the backup state and the triggers if they do not exist.
+     * Migrations that recreate a data table drop its triggers, so this runs on every open.
+     */
+    static void createTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_CHANGE_LOG + "(" +
+                KEY_SEQUENCE + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                KEY_TABLE + " TEXT NOT NULL," +
+                KEY_ROW + " INTEGER NOT NULL);");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_BACKUP_STATE + "(" +
+                KEY_CHAIN + " TEXT," +
+                KEY_CHAIN_SEQUENCE + " INTEGER);");
+
+        for (String table : TRACKED_TABLES) {
+            createTrigger(db, table, "INSERT", "NEW");
+            createTrigger(db, table, "UPDATE", "NEW");
+            createTrigger(db, table, "DELETE", "OLD");
+        }
+    }
+
+    private static void createTrigger(SQLiteDatabase db, String table, String event, String row) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_" + event.toLowerCase() +
+                " AFTER " + event + " ON " + table + " BEGIN " +
+                "INSERT INTO " + TABLE_CHANGE_LOG + "(" + KEY_TABLE + "," + KEY_ROW + ") " +
+                "VALUES ('" + table + "'," + row + ".rowid); END;");
+    }
+
+    /**
+     * @return sequence number of the latest change, 0 if nothing was ever changed
+     */
+    public long getSequence() {
+        Cursor cursor = db.rawQuery("SELECT seq FROM sqlite_sequence WHERE name = ?", new String[]{TABLE_CHANGE_LOG});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return id of the backup chain this database belongs to, null if it never was backed up
+     */
+    public String getChain() {
+        return DatabaseUtils.stringForQuery(db, "SELECT max(" + KEY_CHAIN + ") FROM " + TABLE_BACKUP_STATE, null);
+    }
+
+    /**
+     * @return sequence number of the last backup of the chain that was applied to this database
+     */
+    public long getChainSequence() {
+        return DatabaseUtils.longForQuery(db, "SELECT ifnull(max(" + KEY_CHAIN_SEQUENCE + "), 0) FROM " + TABLE_BACKUP_STATE, null);
+    }
+
+    /**
+     * Starts a new backup chain before a full backup is written. Older changes are dropped,
+     * the full backup contains them.
+     */
+    public void startChain(String chain, long sequence) {
+        db.beginTransaction();
+        try {
+            setChain(chain, sequence);
+            prune(sequence);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void setChain(String chain, long sequence) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_CHAIN, chain);
+        values.put(KEY_CHAIN_SEQUENCE, sequence);
+        db.delete(TABLE_BACKUP_STATE, null, null);
+        db.insert(TABLE_BACKUP_STATE, null, values);
+    }
+
+    /**
+     * Removes all changes up to the given sequence number, they are part of a backup.
+     */
+    private void prune(long sequence) {
+        db.delete(TABLE_CHANGE_LOG, KEY_SEQUENCE + " <= ?", new String[]{Long.toString(sequence)});
+    }
+
+    /**
+     * Writes all rows changed after the sequence number from. Rows changed while the delta
+     * is written may be included although they are after to; applying them twice is harmless.
+     */
+    public void writeDelta(JsonWriter writer, String chain, long from, long to) throws IOException {
+        long start = System.nanoTime();
+        int rows = 0;
+        String[] args = {null, Long.toString(from)};
+
+        db.beginTransactionNonExclusive();
+        try {
+            writer.beginObject();
+            writer.name("chain").value(chain);
+            writer.name("from").value(from);
+            writer.name("to").value(to);
+            writer.name("tables");
+            writer.beginObject();
+            for (String table : TRACKED_TABLES) {
+                args[0] = table;
+                writer.name(table);
+                writer.beginObject();
+
+                writer.name("upsert");
+                writer.beginArray();
+                Cursor cursor = db.rawQuery("SELECT * FROM " + table + " WHERE rowid IN (SELECT " + KEY_ROW +
+                        " FROM " + TABLE_CHANGE_LOG + " WHERE " + KEY_TABLE + " = ? AND " + KEY_SEQUENCE + " > ?)", args);
+                try {
+                    while (cursor.moveToNext()) {
+                        DatabaseExporter.writeRow(cursor, writer);
+                        rows++;
+                    }
+                } finally {
+                    cursor.close();
+                }
+                writer.endArray();
+
+                writer.name("delete");
+                writer.beginArray();
+                cursor = db.rawQuery("SELECT DISTINCT " + KEY_ROW + " FROM " + TABLE_CHANGE_LOG +
+                        " WHERE " + KEY_TABLE + " = ? AND " + KEY_SEQUENCE + " > ?" +
+                        " AND " + KEY_ROW + " NOT IN (SELECT rowid FROM " + table + ")", args);
+                try {
+                    while (cursor.moveToNext()) {
+                        writer.value(cursor.getLong(0));
+                        rows++;
+                    }
+                } finally {
+                    cursor.close();
+                }
+                writer.endArray();
+
+                writer.endObject();
+            }
+            writer.endObject();
+            writer.endObject();
+        } finally {
+            db.endTransaction();
+        }
+
+        QueryStats.getInstance().record("writeDelta", start, rows);
+        Log.d(LOG_TAG, "Delta " + from + ".." + to + " contains " + rows + " changes");
+    }
+
+    /**
+     * @return the distinct image uris of the exercises changed after the sequence number from
+     */
+    public List<String> getChangedImageUris(long from) {
+        List<String> uris = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT DISTINCT " + KEY_IMAGE_EX + " FROM " + TABLE_DATA_EX +
+                " WHERE " + KEY_IMAGE_EX + " IS NOT NULL AND rowid IN (SELECT " + KEY_ROW + " FROM " + TABLE_CHANGE_LOG +
+                " WHERE " + KEY_TABLE + " = ? AND " + KEY_SEQUENCE + " > ?)", new String[]{TABLE_DATA_EX, Long.toString(from)});
+        try {
+            while (cursor.moveToNext()) {
+                uris.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return uris;
+    }
+
+    /**
+     * Applies a delta in one transaction. The delta has to belong to the chain of this database
+     * and cover its state: it starts at or before the sequence number of the last backup applied
+     * to it and does not end before that. Rows changed twice are simply written again.
+     *
+     * @throws IOException if the delta does not fit the state of this database
+     */
+    public void applyDelta(Delta delta) throws IOException {
+        long start = System.nanoTime();
+        int rows = 0;
+
+        db.beginTransaction();
+        try {
+            long applied = getChainSequence();
+            if (!delta.chain.equals(getChain()) || delta.from > applied || delta.to < applied) {
+                throw new IOException("Delta " + delta.chain + "/" + delta.from + ".." + delta.to
+                        + " does not fit the restored backup " + getChain() + "/" + applied);
+            }
+
+            for (String table : TRACKED_TABLES) {
+                for (ContentValues values : delta.upserts.get(table)) {
+                    db.insertWithOnConflict(table, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                    rows++;
+                }
+                SQLiteStatement delete = db.compileStatement("DELETE FROM " + table + " WHERE rowid = ?");
+                try {
+                    for (long row : delta.deletes.get(table)) {
+                        delete.bindLong(1, row);
+                        delete.executeUpdateDelete();
+                        rows++;
+                    }
+                } finally {
+                    delete.close();
+                }
+            }
+
+            // the records are derived from the workout sessions the delta may have changed
+            new RecordTracker(db).rebuild();
+            setChain(delta.chain, delta.to);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        QueryStats.getInstance().record("applyDelta", start, rows);
+        Log.d(LOG_TAG, "Applied delta " + delta.from + ".." + delta.to + " with " + rows + " changes");
+    }
+
+    /**
+     * The rows of a delta backup. It is read completely before anything is written, so the
+     * transaction that applies it is short and does not wait for the rest of the backup.
+     * A delta holds the rows changed within one backup chain, which bounds its size.
+     */
+    public static class Delta {
+        private String chain;
+        private long from = -1;
+        private long to = -1;
+        private final Map<String, List<ContentValues>> upserts = new HashMap<>();
+        private final Map<String, List<Long>> deletes = new HashMap<>();
+
+        private Delta() {
+            for (String table : TRACKED_TABLES) {
+                upserts.put(table, new ArrayList<ContentValues>());
+                deletes.put(table, new ArrayList<Long>());
+            }
+        }
+
+        /**
+         * @throws IOException if the delta is malformed or incomplete
+         */
+        public static Delta read(JsonReader reader) throws IOException {
+            Delta delta = new Delta();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                switch (name) {
+                    case "chain":
+                        delta.chain = reader.nextString();
+                        break;
+                    case "from":
+                        delta.from = reader.nextLong();
+                        break;
+                    case "to":
+                        delta.to = reader.nextLong();
+                        break;
+                    case "tables":
+                        delta.readTables(reader);
+                        break;
+                    default:
+                        throw new IOException("Unknown value " + name);
+                }
+            }
+            reader.endObject();
+            if (delta.chain == null || delta.to < 0) {
+                throw new IOException("Incomplete delta");
+            }
+            return delta;
+        }
+
+        private void readTables(JsonReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String table = reader.nextName();
+                if (!Arrays.asList(TRACKED_TABLES).contains(table)) {
+                    throw new IOException("Unknown table " + table);
+                }
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ("upsert".equals(name)) {
+                        readUpserts(reader, upserts.get(table));
+                    } else if ("delete".equals(name)) {
+                        readDeletes(reader, deletes.get(table));
+                    } else {
+                        throw new IOException("Unknown value " + name);
+                    }
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        }
+
+        private static void readUpserts(JsonReader reader, List<ContentValues> rows) throws IOException {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                ContentValues values = new ContentValues();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String column = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                        values.putNull(column);
+                    } else {
+                        values.put(column, reader.nextString());
+                    }
+                }
+                reader.endObject();
+                rows.add(values);
+            }
+            reader.endArray();
+        }
+
+        private static void readDeletes(JsonReader reader, List<Long> rows) throws IOException {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                rows.add(reader.nextLong());
+            }
+            reader.endArray();
+        }
+    }
+}
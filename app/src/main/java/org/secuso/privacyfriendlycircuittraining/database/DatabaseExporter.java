@@ -16,21 +16,28 @@ package org.secuso.privacyfriendlycircuittraining.database;
 
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.util.Base64;
+import android.util.JsonWriter;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 
 /**
  * @author Karola Marky
- * @version 20161225
+ * @version 20261019
  * Structure based on http://tech.sarathdr.com/android-app/convert-database-cursor-result-to-json-array-android-app-development/
  * accessed at 25th December 2016
  * <p>
- * This class turns a database into a JSON string
+ * This class writes a database as JSON to a stream. Rows are written one by one straight
+ * from the cursor, so the memory use does not depend on the size of the database.
+ * All tables are read in a single transaction and therefore form a consistent snapshot.
+ * <p>
+ * Format: {"DB_NAME": {"table": [{"column": value, ...}, ...], ...}}
+ * Integers and floats are written as numbers, blobs as Base64 strings.
  */
 
 public class DatabaseExporter {
@@ -46,100 +53,104 @@ public class DatabaseExporter {
     }
 
     /**
-     * Turns a single DB table into a JSON string
-     *
-     * @return JSON string of the table
+     * Writes the entire DB to the stream. The stream is flushed but not closed.
      */
-    public JSONArray tableToJSON(String TABLE_NAME) {
-
-        SQLiteDatabase dataBase = SQLiteDatabase.openDatabase(DB_PATH, null, SQLiteDatabase.OPEN_READONLY);
-
-
-        String searchQuery = "SELECT  * FROM " + TABLE_NAME;
-        Cursor cursor = dataBase.rawQuery(searchQuery, null);
-
-        JSONArray resultSet = new JSONArray();
-
-        cursor.moveToFirst();
-        while (!cursor.isAfterLast()) {
-
-            int totalColumn = cursor.getColumnCount();
-            JSONObject rowObject = new JSONObject();
-
-            for (int i = 0; i < totalColumn; i++) {
-                if (cursor.getColumnName(i) != null) {
-
-                    try {
-
-                        if (cursor.getString(i) != null) {
-                            //Log.d(DEBUG_TAG, cursor.getString(i));
-                            rowObject.put(cursor.getColumnName(i), cursor.getString(i));
-                        } else {
-                            rowObject.put(cursor.getColumnName(i), "");
-                        }
-                    } catch (Exception e) {
-                        Log.d(DEBUG_TAG, e.getMessage());
-                    }
+    public void writeDatabase(OutputStream outputStream) throws IOException {
+        long start = System.nanoTime();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+
+        // opened read-write, because only a writable connection can hold the transaction
+        // that keeps other connections from changing the data while it is exported
+        SQLiteDatabase dataBase = SQLiteDatabase.openDatabase(DB_PATH, null, SQLiteDatabase.OPEN_READWRITE);
+        int rows = 0;
+        try {
+            dataBase.beginTransactionNonExclusive();
+            try {
+                writer.beginObject();
+                writer.name(DB_NAME);
+                writer.beginObject();
+                for (String table : getTableNames(dataBase)) {
+                    writer.name(table);
+                    rows += writeTable(dataBase, table, writer);
                 }
-
+                writer.endObject();
+                writer.endObject();
+                writer.flush();
+            } finally {
+                // nothing was changed, committing or rolling back makes no difference
+                dataBase.endTransaction();
             }
-
-            resultSet.put(rowObject);
-            cursor.moveToNext();
+        } finally {
+            dataBase.close();
         }
 
-        cursor.close();
+        QueryStats.getInstance().record("exportDatabase", start, rows);
+        Log.d(DEBUG_TAG, "Exported " + rows + " rows in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
 
-        JSONObject finalJSON = new JSONObject();
+    /**
+     * Writes a single DB table as JSON array
+     *
+     * @return number of rows written
+     */
+    private static int writeTable(SQLiteDatabase dataBase, String TABLE_NAME, JsonWriter writer) throws IOException {
+        Cursor cursor = dataBase.rawQuery("SELECT  * FROM " + TABLE_NAME, null);
+        int rows = 0;
         try {
-            finalJSON.put(TABLE_NAME, resultSet);
-        } catch (JSONException e) {
-            e.printStackTrace();
+            writer.beginArray();
+            while (cursor.moveToNext()) {
+                writeRow(cursor, writer);
+                rows++;
+            }
+            writer.endArray();
+        } finally {
+            cursor.close();
         }
+        return rows;
+    }
 
-        //Log.d(DEBUG_TAG, finalJSON.toString());
-        return resultSet;
-
+    /**
+     * Writes the current row of the cursor as JSON object with typed values.
+     */
+    static void writeRow(Cursor cursor, JsonWriter writer) throws IOException {
+        writer.beginObject();
+        for (int i = 0; i < cursor.getColumnCount(); i++) {
+            writer.name(cursor.getColumnName(i));
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    writer.nullValue();
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    writer.value(cursor.getLong(i));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    writer.value(cursor.getDouble(i));
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    writer.value(Base64.encodeToString(cursor.getBlob(i), Base64.NO_WRAP));
+                    break;
+                default:
+                    writer.value(cursor.getString(i));
+                    break;
+            }
+        }
+        writer.endObject();
     }
 
     /**
      * @return a list of all table names, including android_metadata and sqlite_sequence (table that
      * contains current maximal ID of all tables)
      */
-    public ArrayList<String> getTableNames() {
-
-        SQLiteDatabase dataBase = SQLiteDatabase.openDatabase(DB_PATH, null, SQLiteDatabase.OPEN_READONLY);
+    private static ArrayList<String> getTableNames(SQLiteDatabase dataBase) {
         ArrayList<String> arrTblNames = new ArrayList<String>();
         Cursor c = dataBase.rawQuery("SELECT name FROM sqlite_master WHERE type='table'", null);
-
-        if (c.moveToFirst()) {
-            while (!c.isAfterLast()) {
-                arrTblNames.add(c.getString(c.getColumnIndexOrThrow("name")));
-                c.moveToNext();
+        try {
+            while (c.moveToNext()) {
+                arrTblNames.add(c.getString(0));
             }
+        } finally {
+            c.close();
         }
         return arrTblNames;
     }
-
-    /**
-     * @return Entire DB as JSONObject
-     * @throws JSONException
-     */
-    public JSONObject dbToJSON() throws JSONException {
-        ArrayList<String> tables = getTableNames();
-        JSONObject listList = new JSONObject();
-
-        for (int i = 0; i < tables.size(); i++) {
-            listList.put(tables.get(i), tableToJSON(tables.get(i)));
-        }
-
-        JSONObject finalDBJSON = new JSONObject();
-        finalDBJSON.put(DB_NAME, listList);
-
-        Log.d(DEBUG_TAG, finalDBJSON.toString());
-
-        return finalDBJSON;
-    }
-
-
 }
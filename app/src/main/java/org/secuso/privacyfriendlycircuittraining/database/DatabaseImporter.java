@@ -14,23 +14,419 @@
 
 package org.secuso.privacyfriendlycircuittraining.database;
 
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.KEY_CALORIES;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.KEY_DESCIRPTION_EX;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.KEY_EXERCISES_ES;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.KEY_ID;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.KEY_ID_ES;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.KEY_ID_EX;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.KEY_IMAGE_EX;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.KEY_NAME_ES;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.KEY_NAME_EX;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.KEY_WORKOUT_TIME;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.TABLE_DATA;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.TABLE_DATA_ES;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.TABLE_DATA_EX;
+
 /**
  * @author Karola Marky
- * @version 20161225
+ * @version 20261019
+ * <p>
+ * This class imports the JSON written by {@link DatabaseExporter}, or the tables of another
+ * database, into an existing database. The JSON is streamed: only the row that is currently imported is held in memory. Rows are
+ * inserted with prepared statements in a single transaction, so an import that fails
+ * halfway leaves the database as it was.
+ * <p>
+ * Imported data is merged with the data already in the database:
+ * * workout sessions of the same day are added up
+ * * exercises and exercise sets keep their id if it is free, otherwise they get a new one;
+ *   rows that are identical to the existing row with the same id are skipped
+ * * exercise ids inside the imported exercise sets are rewritten to the new ids
  */
 
 public class DatabaseImporter {
 
     private final String DEBUG_TAG = "DATABASE_IMPORTER";
 
-    public void importSimpleTable(PFASQLiteHelper database, JSONObject JSONTable) {
+    private final SQLiteDatabase database;
+
+    // old exercise id -> new exercise id, only for exercises that had to be renumbered
+    private final Map<Integer, Integer> exerciseIdMapping = new HashMap<>();
+    // ids of all exercise sets that were inserted, their exercises may need to be remapped
+    private final List<Long> importedExerciseSets = new ArrayList<>();
+
+    private int importedRows = 0;
+
+    public DatabaseImporter(SQLiteDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Imports a whole database in the format of {@link DatabaseExporter#writeDatabase},
+     * an object with the name of the database mapping to an object of tables.
+     */
+    public void importDatabase(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            reader.nextName();
+            importTables(reader);
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Imports an object that maps table names to arrays of rows.
+     */
+    public void importTables(JsonReader reader) throws IOException {
+        long start = System.nanoTime();
+        database.beginTransaction();
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                importSimpleTable(reader.nextName(), reader);
+            }
+            reader.endObject();
+
+            remapExerciseSets();
+            new RecordTracker(database).rebuild();
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        QueryStats.getInstance().record("importTables", start, importedRows);
+        Log.i(DEBUG_TAG, "Imported " + importedRows + " rows in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Imports the given tables of another database, e.g. a database restored from a backup.
+     * Rows are read straight from the cursor. Tables missing in the source are skipped.
+     */
+    public void importTables(SQLiteDatabase source, Collection<String> tables) {
+        long start = System.nanoTime();
+        database.beginTransaction();
+        try {
+            for (String table : tables) {
+                importTable(source, table);
+            }
+
+            remapExerciseSets();
+            new RecordTracker(database).rebuild();
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        QueryStats.getInstance().record("mergeTables", start, importedRows);
+        Log.i(DEBUG_TAG, "Merged " + importedRows + " rows in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private void importTable(SQLiteDatabase source, String table) {
+        RowImporter importer = createImporter(table);
+        if (importer == null || DatabaseUtils.longForQuery(source,
+                "SELECT count(*) FROM sqlite_master WHERE type = 'table' AND name = ?", new String[]{table}) == 0) {
+            Log.d(DEBUG_TAG, "Skipping table " + table);
+            if (importer != null) {
+                importer.close();
+            }
+            return;
+        }
+
+        Cursor cursor = source.rawQuery("SELECT * FROM " + table, null);
+        try {
+            Map<String, String> row = new HashMap<>();
+            while (cursor.moveToNext()) {
+                row.clear();
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    row.put(cursor.getColumnName(i), cursor.getString(i));
+                }
+                importRow(importer, row);
+            }
+        } finally {
+            cursor.close();
+            importer.close();
+        }
+    }
+
+    /**
+     * Imports the array of rows of a single table. Tables that are unknown to this app,
+     * e.g. sqlite_sequence or android_metadata, are skipped.
+     * Has to be called inside a transaction.
+     */
+    public void importSimpleTable(String table, JsonReader reader) throws IOException {
+        RowImporter importer = createImporter(table);
+        if (importer == null) {
+            Log.d(DEBUG_TAG, "Skipping table " + table);
+            reader.skipValue();
+            return;
+        }
+
+        try {
+            reader.beginArray();
+            Map<String, String> row = new HashMap<>();
+            while (reader.hasNext()) {
+                row.clear();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String column = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                        row.put(column, null);
+                    } else {
+                        row.put(column, reader.nextString());
+                    }
+                }
+                reader.endObject();
+
+                importRow(importer, row);
+            }
+            reader.endArray();
+        } finally {
+            importer.close();
+        }
+    }
+
+    /**
+     * @return the importer for the table or null if the table is unknown to this app
+     */
+    private RowImporter createImporter(String table) {
+        switch (table) {
+            case TABLE_DATA:
+                return new WorkoutSessionImporter();
+            case TABLE_DATA_EX:
+                return new ExerciseImporter();
+            case TABLE_DATA_ES:
+                return new ExerciseSetImporter();
+            default:
+                return null;
+        }
+    }
 
+    private void importRow(RowImporter importer, Map<String, String> row) {
+        importer.importRow(row);
+        importedRows++;
     }
 
-    public void importDatabase(PFASQLiteHelper database, JSONObject JSONDB) {
+    /**
+     * Rewrites the exercise ids of all imported exercise sets that point to renumbered exercises.
+     * Runs after all tables are read, because the exercise sets may come before the exercises.
+     */
+    private void remapExerciseSets() {
+        if (exerciseIdMapping.isEmpty()) {
+            return;
+        }
+        SQLiteStatement update = database.compileStatement("UPDATE " + TABLE_DATA_ES +
+                " SET " + KEY_EXERCISES_ES + " = ? WHERE " + KEY_ID_ES + " = ?");
+        try {
+            for (Long id : importedExerciseSets) {
+                String exercises = null;
+                Cursor cursor = database.rawQuery("SELECT " + KEY_EXERCISES_ES + " FROM " + TABLE_DATA_ES +
+                        " WHERE " + KEY_ID_ES + " = ?", new String[]{Long.toString(id)});
+                try {
+                    if (cursor.moveToFirst()) {
+                        exercises = cursor.getString(0);
+                    }
+                } finally {
+                    cursor.close();
+                }
+                if (TextUtils.isEmpty(exercises)) {
+                    continue;
+                }
 
+                try {
+                    JSONArray ids = new JSONObject(exercises).optJSONArray("uniqueArrays");
+                    if (ids == null) {
+                        continue;
+                    }
+                    JSONArray remapped = new JSONArray();
+                    boolean changed = false;
+                    for (int i = 0; i < ids.length(); i++) {
+                        int exerciseId = Integer.parseInt(ids.getString(i));
+                        Integer newId = exerciseIdMapping.get(exerciseId);
+                        if (newId != null) {
+                            exerciseId = newId;
+                            changed = true;
+                        }
+                        remapped.put(exerciseId);
+                    }
+                    if (changed) {
+                        JSONObject json = new JSONObject();
+                        json.put("uniqueArrays", remapped);
+                        update.bindString(1, json.toString());
+                        update.bindLong(2, id);
+                        update.executeUpdateDelete();
+                    }
+                } catch (JSONException | NumberFormatException e) {
+                    Log.e(DEBUG_TAG, "Could not remap exercises of set " + id, e);
+                }
+            }
+        } finally {
+            update.close();
+        }
     }
 
+    private static int parseInt(String value) {
+        if (TextUtils.isEmpty(value)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * @return true if the row with the given id has exactly the given values in the given columns
+     */
+    private boolean isSameRow(String table, String key, int id, String[] columns, String[] values) {
+        Cursor cursor = database.query(table, columns, key + " = ?", new String[]{Integer.toString(id)},
+                null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return false;
+            }
+            for (int i = 0; i < columns.length; i++) {
+                if (!TextUtils.equals(cursor.getString(i), values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private interface RowImporter {
+        void importRow(Map<String, String> row);
+        void close();
+    }
+
+    private class WorkoutSessionImporter implements RowImporter {
+        private final SQLiteStatement update = database.compileStatement("UPDATE " + TABLE_DATA +
+                " SET " + KEY_WORKOUT_TIME + " = " + KEY_WORKOUT_TIME + " + ?, " +
+                KEY_CALORIES + " = " + KEY_CALORIES + " + ? WHERE " + KEY_ID + " = ?");
+        private final SQLiteStatement insert = database.compileStatement("INSERT INTO " + TABLE_DATA +
+                "(" + KEY_ID + "," + KEY_WORKOUT_TIME + "," + KEY_CALORIES + ") VALUES (?,?,?)");
+
+        @Override
+        public void importRow(Map<String, String> row) {
+            int id = parseInt(row.get(KEY_ID));
+            int time = parseInt(row.get(KEY_WORKOUT_TIME));
+            int calories = parseInt(row.get(KEY_CALORIES));
+
+            update.bindLong(1, time);
+            update.bindLong(2, calories);
+            update.bindLong(3, id);
+            if (update.executeUpdateDelete() == 0) {
+                insert.bindLong(1, id);
+                insert.bindLong(2, time);
+                insert.bindLong(3, calories);
+                insert.executeInsert();
+            }
+        }
+
+        @Override
+        public void close() {
+            update.close();
+            insert.close();
+        }
+    }
+
+    private class ExerciseImporter implements RowImporter {
+        private final String[] columns = {KEY_NAME_EX, KEY_DESCIRPTION_EX, KEY_IMAGE_EX};
+        private final SQLiteStatement insertWithId = database.compileStatement("INSERT OR IGNORE INTO " + TABLE_DATA_EX +
+                "(" + KEY_ID_EX + "," + KEY_NAME_EX + "," + KEY_DESCIRPTION_EX + "," + KEY_IMAGE_EX + ") VALUES (?,?,?,?)");
+        private final SQLiteStatement insert = database.compileStatement("INSERT INTO " + TABLE_DATA_EX +
+                "(" + KEY_NAME_EX + "," + KEY_DESCIRPTION_EX + "," + KEY_IMAGE_EX + ") VALUES (?,?,?)");
+
+        @Override
+        public void importRow(Map<String, String> row) {
+            int id = parseInt(row.get(KEY_ID_EX));
+            String[] values = {row.get(KEY_NAME_EX), row.get(KEY_DESCIRPTION_EX), row.get(KEY_IMAGE_EX)};
+
+            insertWithId.bindLong(1, id);
+            for (int i = 0; i < values.length; i++) {
+                bindStringOrNull(insertWithId, i + 2, values[i]);
+            }
+            if (insertWithId.executeInsert() != -1
+                    || isSameRow(TABLE_DATA_EX, KEY_ID_EX, id, columns, values)) {
+                return;
+            }
+
+            // the id is taken by a different exercise
+            for (int i = 0; i < values.length; i++) {
+                bindStringOrNull(insert, i + 1, values[i]);
+            }
+            exerciseIdMapping.put(id, (int) insert.executeInsert());
+        }
+
+        @Override
+        public void close() {
+            insertWithId.close();
+            insert.close();
+        }
+    }
+
+    private class ExerciseSetImporter implements RowImporter {
+        private final String[] columns = {KEY_NAME_ES, KEY_EXERCISES_ES};
+        private final SQLiteStatement insertWithId = database.compileStatement("INSERT OR IGNORE INTO " + TABLE_DATA_ES +
+                "(" + KEY_ID_ES + "," + KEY_NAME_ES + "," + KEY_EXERCISES_ES + ") VALUES (?,?,?)");
+        private final SQLiteStatement insert = database.compileStatement("INSERT INTO " + TABLE_DATA_ES +
+                "(" + KEY_NAME_ES + "," + KEY_EXERCISES_ES + ") VALUES (?,?)");
+
+        @Override
+        public void importRow(Map<String, String> row) {
+            int id = parseInt(row.get(KEY_ID_ES));
+            String[] values = {row.get(KEY_NAME_ES), row.get(KEY_EXERCISES_ES)};
+
+            insertWithId.bindLong(1, id);
+            for (int i = 0; i < values.length; i++) {
+                bindStringOrNull(insertWithId, i + 2, values[i]);
+            }
+            long newId = insertWithId.executeInsert();
+            if (newId == -1) {
+                if (isSameRow(TABLE_DATA_ES, KEY_ID_ES, id, columns, values)) {
+                    return;
+                }
+                for (int i = 0; i < values.length; i++) {
+                    bindStringOrNull(insert, i + 1, values[i]);
+                }
+                newId = insert.executeInsert();
+            }
+            importedExerciseSets.add(newId);
+        }
+
+        @Override
+        public void close() {
+            insertWithId.close();
+            insert.close();
+        }
+    }
 }
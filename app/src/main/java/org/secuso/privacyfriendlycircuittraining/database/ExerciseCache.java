@@ -0,0 +1,87 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.database;
+
+import org.secuso.privacyfriendlycircuittraining.models.Exercise;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least recently used cache of exercises keyed by their id.
+ * Entries are copied on the way in and out, so callers can modify the returned
+ * exercises without changing the cached ones.
+ *
+ * @version 20261019
+ */
+public class ExerciseCache {
+
+    private final Map<Integer, Exercise> exercises;
+    private long hitCount;
+    private long missCount;
+
+    public ExerciseCache(final int maxSize) {
+        this.exercises = new LinkedHashMap<Integer, Exercise>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Exercise> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return a copy of the cached exercise or null if it is not cached
+     */
+    public synchronized Exercise get(int id) {
+        Exercise exercise = exercises.get(id);
+        if (exercise == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return copy(exercise);
+    }
+
+    public synchronized void put(Exercise exercise) {
+        exercises.put(exercise.getID(), copy(exercise));
+    }
+
+    public synchronized void putAll(Collection<Exercise> exercises) {
+        for (Exercise exercise : exercises) {
+            put(exercise);
+        }
+    }
+
+    public synchronized void remove(int id) {
+        exercises.remove(id);
+    }
+
+    public synchronized void clear() {
+        exercises.clear();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private static Exercise copy(Exercise exercise) {
+        return new Exercise(exercise.getID(), exercise.getName(), exercise.getDescription(), exercise.getImage());
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import org.secuso.privacyfriendlycircuittraining.models.Exercise;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Full text index over the name and description of the exercises.
+ * The index lives in its own database file: it only holds data derived from the
+ * exercise table, so it is not part of backups and can be rebuilt at any time.
+ * The document id of an entry is the id of the exercise.
+ *
+ * @version 20261019
+ */
+public class ExerciseSearchIndex extends SQLiteOpenHelper {
+
+    public static final String DATABASE_NAME = "PF_TRAINING_SEARCH_DB";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_SEARCH = "EXERCISE_SEARCH";
+    private static final String KEY_NAME = "name";
+    private static final String KEY_DESCRIPTION = "description";
+
+    public ExerciseSearchIndex(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_SEARCH + " USING fts4(" +
+                KEY_NAME + "," +
+                KEY_DESCRIPTION + "," +
+                "tokenize=unicode61);");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // the index only holds derived data, it is refilled on the next sync check
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SEARCH + ";");
+        onCreate(db);
+    }
+
+    @Override
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        onUpgrade(db, oldVersion, newVersion);
+    }
+
+    /**
+     * Adds the exercise to the index or replaces its entry.
+     */
+    public void index(Exercise exercise) {
+        SQLiteDatabase database = getWritableDatabase();
+        SQLiteStatement insert = compileInsert(database);
+        try {
+            bindAndInsert(insert, exercise);
+        } finally {
+            insert.close();
+        }
+    }
+
+    public void remove(int id) {
+        getWritableDatabase().delete(TABLE_SEARCH, "docid = ?", new String[]{Integer.toString(id)});
+    }
+
+    public void removeAll(Collection<Integer> ids) {
+        SQLiteDatabase database = getWritableDatabase();
+        SQLiteStatement delete = database.compileStatement("DELETE FROM " + TABLE_SEARCH + " WHERE docid = ?");
+        database.beginTransaction();
+        try {
+            for (Integer id : ids) {
+                delete.bindLong(1, id);
+                delete.executeUpdateDelete();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            delete.close();
+        }
+    }
+
+    public void clear() {
+        getWritableDatabase().execSQL("DELETE FROM " + TABLE_SEARCH);
+    }
+
+    /**
+     * Replaces the whole index with the given exercises in one transaction.
+     */
+    public void rebuild(List<Exercise> exercises) {
+        SQLiteDatabase database = getWritableDatabase();
+        SQLiteStatement insert = compileInsert(database);
+        database.beginTransaction();
+        try {
+            database.execSQL("DELETE FROM " + TABLE_SEARCH);
+            for (Exercise exercise : exercises) {
+                bindAndInsert(insert, exercise);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            insert.close();
+        }
+    }
+
+    /**
+     * Checks cheaply whether the index still covers exactly the given exercise ids.
+     * Changed names or descriptions are not noticed, the index has to be cleared for those.
+     *
+     * @param count number of exercises
+     * @param idSum sum of all exercise ids
+     */
+    public boolean isInSync(long count, long idSum) {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT count(*), total(docid) FROM " + TABLE_SEARCH, null);
+        try {
+            return cursor.moveToFirst() && cursor.getLong(0) == count && cursor.getLong(1) == idSum;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Searches name and description. Every word of the query has to match the beginning
+     * of a word in the exercise, so the search can be used while typing.
+     *
+     * @return ids of the matching exercises in ascending order
+     */
+    public List<Integer> search(String query) {
+        List<Integer> ids = new ArrayList<>();
+        String match = toMatchExpression(query);
+        if (match.isEmpty()) {
+            return ids;
+        }
+
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT docid FROM " + TABLE_SEARCH +
+                " WHERE " + TABLE_SEARCH + " MATCH ? ORDER BY docid", new String[]{match});
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Turns user input into an FTS expression of quoted prefix terms, so characters
+     * with a special meaning in FTS queries are matched literally.
+     */
+    private static String toMatchExpression(String query) {
+        StringBuilder match = new StringBuilder();
+        for (String term : query.trim().split("\\s+")) {
+            term = term.replace("\"", "");
+            if (term.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(term).append("*\"");
+        }
+        return match.toString();
+    }
+
+    private static SQLiteStatement compileInsert(SQLiteDatabase database) {
+        return database.compileStatement("INSERT OR REPLACE INTO " + TABLE_SEARCH +
+                "(docid," + KEY_NAME + "," + KEY_DESCRIPTION + ") VALUES (?,?,?)");
+    }
+
+    private static void bindAndInsert(SQLiteStatement insert, Exercise exercise) {
+        insert.clearBindings();
+        insert.bindLong(1, exercise.getID());
+        if (exercise.getName() != null) {
+            insert.bindString(2, exercise.getName());
+        }
+        if (exercise.getDescription() != null) {
+            insert.bindString(3, exercise.getDescription());
+        }
+        insert.executeInsert();
+    }
+}
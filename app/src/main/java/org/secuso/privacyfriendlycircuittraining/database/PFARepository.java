@@ -0,0 +1,591 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.database;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+
+import org.json.JSONException;
+import org.secuso.privacyfriendlycircuittraining.models.ActivityReport;
+import org.secuso.privacyfriendlycircuittraining.models.Exercise;
+import org.secuso.privacyfriendlycircuittraining.models.ExerciseSet;
+import org.secuso.privacyfriendlycircuittraining.models.WorkoutRecords;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Single entry point for all database access of the app.
+ * Every query and write is executed on one background thread, results are delivered on the
+ * main thread. Queries can be observed as {@link LiveData}, which re-emits whenever one of the
+ * tables the query reads from is changed through this repository.
+ *
+ * @version 20261019
+ */
+public class PFARepository {
+
+    private static final String LOG_TAG = "PFARepository";
+
+    private static final int PAGE_SIZE = 50;
+    private static final int REPORT_CACHE_SIZE = 64;
+
+    private static PFARepository instance;
+
+    private final PFASQLiteHelper helper;
+    private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Set<TableLiveData<?>>> observers = new HashMap<>();
+    private final ReportCache reportCache = new ReportCache(REPORT_CACHE_SIZE);
+
+    /**
+     * A unit of work that is executed on the database thread.
+     */
+    public interface Operation<T> {
+        T run(PFASQLiteHelper db);
+    }
+
+    /**
+     * Loads consecutive pages of a table ordered by an integer key.
+     */
+    public interface PageLoader<T> {
+        /**
+         * @param afterKey only items with a greater key are returned
+         * @param maxKey   only items with a smaller or equal key are returned
+         * @param limit    maximum number of items, -1 for no limit
+         */
+        List<T> loadPage(PFASQLiteHelper db, int afterKey, int maxKey, int limit);
+
+        int keyOf(T item);
+    }
+
+    /**
+     * Receives the result of an {@link Operation} on the main thread.
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private PFARepository(Context context) {
+        helper = new PFASQLiteHelper(context);
+    }
+
+    public static synchronized PFARepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new PFARepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Runs the operation on the database thread and passes the result to the callback on the
+     * main thread. All observers of the given tables are refreshed afterwards.
+     *
+     * @param operation         work to do on the database thread
+     * @param callback          receives the result, may be null
+     * @param invalidatedTables tables that are modified by the operation
+     */
+    public <T> void execute(final Operation<T> operation, final Callback<T> callback, final String... invalidatedTables) {
+        dbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final T result = operation.run(helper);
+                invalidate(invalidatedTables);
+                if (callback != null) {
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onResult(result);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates an observable query. The operation is run on the database thread whenever the
+     * LiveData becomes active and every time one of the given tables is changed while it is active.
+     *
+     * @param operation the query
+     * @param tables    tables the query reads from
+     */
+    public <T> LiveData<T> query(Operation<T> operation, String... tables) {
+        return new TableLiveData<>(operation, tables);
+    }
+
+    /**
+     * Refreshes all active queries that read from one of the given tables.
+     */
+    public void invalidate(String... tables) {
+        List<TableLiveData<?>> affected = new ArrayList<>();
+        synchronized (observers) {
+            for (String table : tables) {
+                Set<TableLiveData<?>> tableObservers = observers.get(table);
+                if (tableObservers != null) {
+                    affected.addAll(tableObservers);
+                }
+            }
+        }
+        for (TableLiveData<?> liveData : new HashSet<>(affected)) {
+            liveData.refresh();
+        }
+    }
+
+    /**
+     * Resets the repository after the database file was replaced, e.g. by a restore in the
+     * backup process. Runs on the database thread, so no operation still uses the old file,
+     * and refreshes every active query afterwards.
+     */
+    public void onDatabaseReplaced() {
+        dbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                helper.reopen();
+                reportCache.clear();
+                String[] tables;
+                synchronized (observers) {
+                    tables = observers.keySet().toArray(new String[0]);
+                }
+                invalidate(tables);
+                Log.d(LOG_TAG, "Database replaced, refreshed " + tables.length + " tables");
+            }
+        });
+    }
+
+    /*
+     * Exercises
+     */
+
+    public LiveData<List<Exercise>> getAllExercise() {
+        return query(new Operation<List<Exercise>>() {
+            @Override
+            public List<Exercise> run(PFASQLiteHelper db) {
+                return db.getAllExercise();
+            }
+        }, PFASQLiteHelper.TABLE_DATA_EX);
+    }
+
+    /**
+     * All exercises ordered by id, loaded page by page with {@link PagedLiveData#loadMore()}.
+     */
+    public PagedLiveData<Exercise> getExercisePages() {
+        return new PagedLiveData<>(new PageLoader<Exercise>() {
+            @Override
+            public List<Exercise> loadPage(PFASQLiteHelper db, int afterKey, int maxKey, int limit) {
+                return db.getExercisePage(afterKey, maxKey, limit);
+            }
+
+            @Override
+            public int keyOf(Exercise item) {
+                return item.getID();
+            }
+        }, PFASQLiteHelper.TABLE_DATA_EX);
+    }
+
+    public void getExercise(final int id, Callback<Exercise> callback) {
+        execute(new Operation<Exercise>() {
+            @Override
+            public Exercise run(PFASQLiteHelper db) {
+                return db.getExercise(id);
+            }
+        }, callback);
+    }
+
+    /**
+     * Loads the exercises with the given ids, keeping the order (and duplicates) of the ids.
+     * Unknown ids are skipped.
+     */
+    public void getExercises(final List<Integer> ids, Callback<List<Exercise>> callback) {
+        execute(new Operation<List<Exercise>>() {
+            @Override
+            public List<Exercise> run(PFASQLiteHelper db) {
+                return db.getExercises(ids);
+            }
+        }, callback);
+    }
+
+    /**
+     * Searches name and description of all exercises.
+     */
+    public void searchExercises(final String query, Callback<List<Exercise>> callback) {
+        execute(new Operation<List<Exercise>>() {
+            @Override
+            public List<Exercise> run(PFASQLiteHelper db) {
+                return db.searchExercises(query);
+            }
+        }, callback);
+    }
+
+    public void addExercise(final Exercise exercise, Callback<Long> callback) {
+        execute(new Operation<Long>() {
+            @Override
+            public Long run(PFASQLiteHelper db) {
+                return db.addExercise(exercise);
+            }
+        }, callback, PFASQLiteHelper.TABLE_DATA_EX);
+    }
+
+    public void updateExercise(final Exercise exercise) {
+        execute(new Operation<Integer>() {
+            @Override
+            public Integer run(PFASQLiteHelper db) {
+                return db.updateExercise(exercise);
+            }
+        }, null, PFASQLiteHelper.TABLE_DATA_EX);
+    }
+
+    /**
+     * Deletes the exercises and removes them from all exercise sets they are part of.
+     */
+    public void deleteExercises(final List<Exercise> exercises) {
+        final List<Exercise> toDelete = new ArrayList<>(exercises);
+        execute(new Operation<Void>() {
+            @Override
+            public Void run(PFASQLiteHelper db) {
+                db.deleteExercises(toDelete);
+                return null;
+            }
+        }, null, PFASQLiteHelper.TABLE_DATA_EX, PFASQLiteHelper.TABLE_DATA_ES);
+    }
+
+    /*
+     * Exercise sets
+     */
+
+    public LiveData<List<ExerciseSet>> getAllExerciseSet() {
+        return query(new Operation<List<ExerciseSet>>() {
+            @Override
+            public List<ExerciseSet> run(PFASQLiteHelper db) {
+                return db.getAllExerciseSet();
+            }
+        }, PFASQLiteHelper.TABLE_DATA_ES);
+    }
+
+    /**
+     * All exercise sets ordered by id, loaded page by page with {@link PagedLiveData#loadMore()}.
+     */
+    public PagedLiveData<ExerciseSet> getExerciseSetPages() {
+        return new PagedLiveData<>(new PageLoader<ExerciseSet>() {
+            @Override
+            public List<ExerciseSet> loadPage(PFASQLiteHelper db, int afterKey, int maxKey, int limit) {
+                return db.getExerciseSetPage(afterKey, maxKey, limit);
+            }
+
+            @Override
+            public int keyOf(ExerciseSet item) {
+                return item.getID();
+            }
+        }, PFASQLiteHelper.TABLE_DATA_ES);
+    }
+
+    public void getExerciseSet(final int id, Callback<ExerciseSet> callback) {
+        execute(new Operation<ExerciseSet>() {
+            @Override
+            public ExerciseSet run(PFASQLiteHelper db) {
+                return db.getExerciseSet(id);
+            }
+        }, callback);
+    }
+
+    public void addExerciseSet(final ExerciseSet exerciseSet, Callback<Long> callback) {
+        execute(new Operation<Long>() {
+            @Override
+            public Long run(PFASQLiteHelper db) {
+                return db.addExerciseSet(exerciseSet);
+            }
+        }, callback, PFASQLiteHelper.TABLE_DATA_ES);
+    }
+
+    public void updateExerciseSet(final ExerciseSet exerciseSet) {
+        execute(new Operation<Integer>() {
+            @Override
+            public Integer run(PFASQLiteHelper db) {
+                try {
+                    return db.updateExerciseSet(exerciseSet);
+                } catch (JSONException e) {
+                    Log.e(LOG_TAG, "Could not update exercise set " + exerciseSet.getID(), e);
+                    return 0;
+                }
+            }
+        }, null, PFASQLiteHelper.TABLE_DATA_ES);
+    }
+
+    public void deleteExerciseSets(final List<ExerciseSet> exerciseSets) {
+        final List<ExerciseSet> toDelete = new ArrayList<>(exerciseSets);
+        execute(new Operation<Void>() {
+            @Override
+            public Void run(PFASQLiteHelper db) {
+                db.deleteExerciseSets(toDelete);
+                return null;
+            }
+        }, null, PFASQLiteHelper.TABLE_DATA_ES);
+    }
+
+    /*
+     * Workout sessions
+     */
+
+    /**
+     * Adds the given workout time and calories to the statistics of the day with the given id.
+     *
+     * @param id       day in the format yyyyMMdd
+     * @param time     workout time in seconds
+     * @param calories burnt calories
+     */
+    public void addWorkoutStatistics(final int id, final int time, final int calories) {
+        execute(new Operation<Void>() {
+            @Override
+            public Void run(PFASQLiteHelper db) {
+                // the session and the records derived from it change together
+                db.addToWorkoutData(id, time, calories);
+                reportCache.invalidate(id);
+                return null;
+            }
+        }, null, PFASQLiteHelper.TABLE_DATA);
+    }
+
+    public void deleteAllWorkoutData() {
+        execute(new Operation<Void>() {
+            @Override
+            public Void run(PFASQLiteHelper db) {
+                db.deleteAllWorkokutData();
+                new RecordTracker(db.getWritableDatabase()).rebuild();
+                reportCache.clear();
+                return null;
+            }
+        }, null, PFASQLiteHelper.TABLE_DATA);
+    }
+
+    /*
+     * Reports
+     */
+
+    /**
+     * @return the streaks, personal records and totals, they change with the workout sessions
+     */
+    public LiveData<WorkoutRecords> getWorkoutRecords() {
+        return query(new Operation<WorkoutRecords>() {
+            @Override
+            public WorkoutRecords run(PFASQLiteHelper db) {
+                return new RecordTracker(db.getReadableDatabase()).read();
+            }
+        }, PFASQLiteHelper.TABLE_DATA);
+    }
+
+    /**
+     * Creates an observable report of the period from start to end. It is served from the
+     * report cache and only computed again after workout data of the period changed.
+     *
+     * @param start     first day of the period in the format yyyyMMdd
+     * @param end       last day of the period in the format yyyyMMdd
+     * @param operation computes the report on a cache miss
+     */
+    public LiveData<ActivityReport> getReport(final ReportCache.Granularity granularity, final int start, final int end,
+                                              final Locale locale, final Operation<ActivityReport> operation) {
+        return query(new Operation<ActivityReport>() {
+            @Override
+            public ActivityReport run(PFASQLiteHelper db) {
+                ActivityReport report = reportCache.get(granularity, start, locale);
+                if (report == null) {
+                    report = operation.run(db);
+                    reportCache.put(granularity, start, end, locale, report);
+                }
+                return report;
+            }
+        }, PFASQLiteHelper.TABLE_DATA);
+    }
+
+    /**
+     * Computes the report if it is not cached yet, so it can be shown without a query later.
+     * Like every other access it runs on the database thread, queued behind the work that
+     * was requested before it, e.g. the report that is shown right now.
+     *
+     * @return handle to cancel the prefetch, e.g. when the report can no longer be shown
+     */
+    public Future<?> prefetchReport(final ReportCache.Granularity granularity, final int start, final int end,
+                                    final Locale locale, final Operation<ActivityReport> operation) {
+        return dbExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (reportCache.get(granularity, start, locale) != null) {
+                    return;
+                }
+                long generation = reportCache.getGeneration();
+                ActivityReport report = operation.run(helper);
+                reportCache.put(granularity, start, end, locale, report, generation);
+            }
+        });
+    }
+
+    /**
+     * @return the cached report, e.g. to show it without waiting for the database thread, or null
+     */
+    public ActivityReport getCachedReport(ReportCache.Granularity granularity, int start, Locale locale) {
+        return reportCache.get(granularity, start, locale);
+    }
+
+    /**
+     * LiveData that runs its query on the database thread and registers itself for the tables
+     * it reads from while it has active observers.
+     */
+    private class TableLiveData<T> extends LiveData<T> {
+        private final Operation<T> operation;
+        private final String[] tables;
+
+        TableLiveData(Operation<T> operation, String[] tables) {
+            this.operation = operation;
+            this.tables = tables;
+        }
+
+        @Override
+        protected void onActive() {
+            synchronized (observers) {
+                for (String table : tables) {
+                    Set<TableLiveData<?>> tableObservers = observers.get(table);
+                    if (tableObservers == null) {
+                        tableObservers = new HashSet<>();
+                        observers.put(table, tableObservers);
+                    }
+                    tableObservers.add(this);
+                }
+            }
+            refresh();
+        }
+
+        @Override
+        protected void onInactive() {
+            synchronized (observers) {
+                for (String table : tables) {
+                    Set<TableLiveData<?>> tableObservers = observers.get(table);
+                    if (tableObservers != null) {
+                        tableObservers.remove(this);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Runs the query, called on the database thread.
+         */
+        T load() {
+            return operation.run(helper);
+        }
+
+        void refresh() {
+            dbExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    postValue(load());
+                }
+            });
+        }
+    }
+
+    /**
+     * LiveData holding a growing window of a table that is loaded with keyset pagination.
+     * It starts with the first page, {@link #loadMore()} appends the next one. When the table
+     * changes only the window that is already loaded is queried again, so the cost depends on
+     * how far the user has scrolled and not on the size of the table.
+     */
+    public class PagedLiveData<T> extends TableLiveData<List<T>> {
+        private final PageLoader<T> loader;
+        // only accessed on the database thread
+        private List<T> loaded = new ArrayList<>();
+        private boolean complete = false;
+        // only accessed on the main thread
+        private boolean loadingMore = false;
+
+        PagedLiveData(PageLoader<T> loader, String... tables) {
+            super(null, tables);
+            this.loader = loader;
+        }
+
+        @Override
+        List<T> load() {
+            List<T> window;
+            if (loaded.isEmpty()) {
+                window = loader.loadPage(helper, Integer.MIN_VALUE, Integer.MAX_VALUE, PAGE_SIZE);
+                complete = window.size() < PAGE_SIZE;
+            } else if (complete) {
+                // rows appended at the end have to show up as well
+                int limit = loaded.size() + PAGE_SIZE;
+                window = loader.loadPage(helper, Integer.MIN_VALUE, Integer.MAX_VALUE, limit);
+                complete = window.size() < limit;
+            } else {
+                int lastKey = loader.keyOf(loaded.get(loaded.size() - 1));
+                window = loader.loadPage(helper, Integer.MIN_VALUE, lastKey, -1);
+            }
+            loaded = window;
+            return new ArrayList<>(loaded);
+        }
+
+        /**
+         * Loads the next page unless the end of the table is reached or a page is already loading.
+         */
+        public void loadMore() {
+            if (loadingMore) {
+                return;
+            }
+            loadingMore = true;
+            dbExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!complete && !loaded.isEmpty()) {
+                        int lastKey = loader.keyOf(loaded.get(loaded.size() - 1));
+                        List<T> page = loader.loadPage(helper, lastKey, Integer.MAX_VALUE, PAGE_SIZE);
+                        complete = page.size() < PAGE_SIZE;
+                        loaded.addAll(page);
+                        postValue(new ArrayList<>(loaded));
+                    }
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            loadingMore = false;
+                        }
+                    });
+                }
+            });
+        }
+
+        /**
+         * Loads all remaining pages at once, e.g. to show a row that was just appended at the end.
+         */
+        public void loadAll() {
+            dbExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!complete) {
+                        int lastKey = loaded.isEmpty() ? Integer.MIN_VALUE : loader.keyOf(loaded.get(loaded.size() - 1));
+                        loaded.addAll(loader.loadPage(helper, lastKey, Integer.MAX_VALUE, -1));
+                        complete = true;
+                    }
+                    postValue(new ArrayList<>(loaded));
+                }
+            });
+        }
+    }
+}
@@ -17,8 +17,10 @@ package org.secuso.privacyfriendlycircuittraining.database;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.util.Log;
 
@@ -30,7 +32,12 @@ import org.secuso.privacyfriendlycircuittraining.models.ExerciseSet;
 import org.secuso.privacyfriendlycircuittraining.models.WorkoutSessionData;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -40,12 +47,26 @@ import java.util.List;
  * accessed at 16th June 2016
  *
  * This class defines the structure of our database.
+ * The single instance is owned by {@link PFARepository}, which closes it. The methods
+ * keep the connection open, so they can be called inside a transaction.
  */
 
 public class PFASQLiteHelper extends SQLiteOpenHelper {
+    /**
+     * A single step of the schema. Patches are run inside a transaction by
+     * {@link #runPatch}, so they must not begin their own.
+     */
     private interface Patch {
          void apply(SQLiteDatabase db);
          void revert(SQLiteDatabase db);
+
+         /**
+          * @return true if the patch drops or rewrites tables, so the file may contain
+          * enough free pages to be worth a VACUUM afterwards
+          */
+         default boolean freesPages() {
+             return false;
+         }
     }
 
     private static final Patch[] PATCHES = new Patch[] {
@@ -83,8 +104,6 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
             }
             , new Patch() {
                 public void apply(SQLiteDatabase db) {
-                    db.beginTransaction();
-
                     String RENAME_EXERCISE_TABLE = "ALTER TABLE " + TABLE_DATA_EX + " RENAME TO "+ TABLE_DATA_EX + "_old;";
                     String EXERCISE_TABLE = "CREATE TABLE " + TABLE_DATA_EX +
                             "(" +
@@ -98,16 +117,14 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
                             " SELECT " + KEY_ID_EX + "," + KEY_NAME_EX + "," + KEY_DESCIRPTION_EX +
                             " FROM " + TABLE_DATA_EX + "_old;";
 
+                    // left behind by earlier versions of this patch
+                    db.execSQL("DROP TABLE IF EXISTS " + TABLE_DATA_EX + "_old;");
                     db.execSQL(RENAME_EXERCISE_TABLE);
                     db.execSQL(EXERCISE_TABLE);
                     db.execSQL(COPY_EXERCISES);
-
-                    db.setTransactionSuccessful();
-                    db.endTransaction();
+                    db.execSQL("DROP TABLE " + TABLE_DATA_EX + "_old;");
                 }
                 public void revert(SQLiteDatabase db) {
-                    db.beginTransaction();
-
                     String RENAME_EXERCISE_TABLE = "ALTER TABLE " + TABLE_DATA_EX + " RENAME TO "+ TABLE_DATA_EX + "_old;";
                     String EXERCISE_TABLE = "CREATE TABLE " + TABLE_DATA_EX +
                             "(" +
@@ -121,18 +138,35 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
                             " SELECT " + KEY_ID_EX + "," + KEY_NAME_EX + "," + KEY_DESCIRPTION_EX +
                             " FROM " + TABLE_DATA_EX + "_old;";
 
+                    // left behind by earlier versions of this patch
+                    db.execSQL("DROP TABLE IF EXISTS " + TABLE_DATA_EX + "_old;");
                     db.execSQL(RENAME_EXERCISE_TABLE);
                     db.execSQL(EXERCISE_TABLE);
                     db.execSQL(COPY_EXERCISES);
-
-                    db.setTransactionSuccessful();
-                    db.endTransaction();
+                    db.execSQL("DROP TABLE " + TABLE_DATA_EX + "_old;");
+                }
+                public boolean freesPages() {
+                    return true;
+                }
+            }
+            , new Patch() {
+                // databases upgraded by earlier versions still contain the copy source of patch 1
+                public void apply(SQLiteDatabase db) {
+                    db.execSQL("DROP TABLE IF EXISTS " + TABLE_DATA_EX + "_old;");
+                }
+                public void revert(SQLiteDatabase db) {
+                }
+                public boolean freesPages() {
+                    return true;
                 }
             }
     };
 
     private static final int DATABASE_VERSION = PATCHES.length;
 
+    // a VACUUM is only worth its cost if at least this share of the file is unused
+    private static final double VACUUM_FREE_PAGE_RATIO = 0.25;
+
     /**
      * Use the following pattern for the name of the database
      * PF_[Name of the app]_DB
@@ -140,50 +174,167 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
     public static final String DATABASE_NAME = "PF_TRAINING_DB";
 
     //Name of the table in the database
-    private static final String TABLE_DATA = "WORKOUT_SESSION";
-    private static final String TABLE_DATA_ES = "EXERCISE_SET";
-    private static final String TABLE_DATA_EX = "EXERCISES";
+    public static final String TABLE_DATA = "WORKOUT_SESSION";
+    public static final String TABLE_DATA_ES = "EXERCISE_SET";
+    public static final String TABLE_DATA_EX = "EXERCISES";
 
     //Names of columns in the databases in this example we only use one table
-    private static final String KEY_ID = "id";
-    private static final String KEY_WORKOUT_TIME = "workoutTime";
-    private static final String KEY_CALORIES = "calories";
-    private static final String KEY_TIMESTAMP = "time";
-
-    private static final String KEY_ID_ES = "id";
-    private static final String KEY_NAME_ES = "name";
-    private static final String KEY_EXERCISES_ES = "exercises";
-
-    private static final String KEY_ID_EX = "id";
-    private static final String KEY_NAME_EX = "name";
-    private static final String KEY_DESCIRPTION_EX = "description";
-    private static final String KEY_IMAGE_EX = "image";
+    static final String KEY_ID = "id";
+    static final String KEY_WORKOUT_TIME = "workoutTime";
+    static final String KEY_CALORIES = "calories";
+    static final String KEY_TIMESTAMP = "time";
+
+    static final String KEY_ID_ES = "id";
+    static final String KEY_NAME_ES = "name";
+    static final String KEY_EXERCISES_ES = "exercises";
+
+    static final String KEY_ID_EX = "id";
+    static final String KEY_NAME_EX = "name";
+    static final String KEY_DESCIRPTION_EX = "description";
+    static final String KEY_IMAGE_EX = "image";
+
+    // SQLite refuses statements with more than 999 bound parameters on older devices
+    private static final int MAX_BATCH_PARAMETERS = 999;
+
+    private static final int EXERCISE_CACHE_SIZE = 128;
+
+    // Switch to true to trace every row that is read. As a compile-time constant
+    // the logging code is removed by the compiler while it is false.
+    private static final boolean LOG_ROWS = false;
+
+    private static final String SQL_WORKOUT_DATA_BY_ID = "SELECT " + KEY_ID + "," + KEY_WORKOUT_TIME + "," +
+            KEY_CALORIES + "," + KEY_TIMESTAMP + " FROM " + TABLE_DATA + " WHERE " + KEY_ID + " = ?";
+    private static final String SQL_ADD_TO_WORKOUT_DATA = "UPDATE " + TABLE_DATA + " SET " +
+            KEY_WORKOUT_TIME + " = " + KEY_WORKOUT_TIME + " + ?," + KEY_CALORIES + " = " + KEY_CALORIES + " + ? WHERE " + KEY_ID + " = ?";
+    private static final String SQL_WORKOUT_DATA_RANGE = "SELECT " + KEY_ID + "," + KEY_WORKOUT_TIME + "," +
+            KEY_CALORIES + " FROM " + TABLE_DATA + " WHERE " + KEY_ID + " BETWEEN ? AND ? ORDER BY " + KEY_ID;
+    // the ids are days in the format yyyyMMdd, so id / 100 is the month
+    private static final String SQL_MONTHLY_WORKOUT_DATA = "SELECT " + KEY_ID + " / 100 AS month, sum(" +
+            KEY_WORKOUT_TIME + "), sum(" + KEY_CALORIES + ") FROM " + TABLE_DATA +
+            " WHERE " + KEY_ID + " BETWEEN ? AND ? GROUP BY month ORDER BY month";
+    private static final String SQL_EXERCISE_SET_BY_ID = "SELECT " + KEY_ID_ES + "," + KEY_NAME_ES + "," +
+            KEY_EXERCISES_ES + " FROM " + TABLE_DATA_ES + " WHERE " + KEY_ID_ES + " = ?";
+    private static final String SQL_EXERCISE_BY_ID = "SELECT " + KEY_ID_EX + "," + KEY_NAME_EX + "," +
+            KEY_DESCIRPTION_EX + "," + KEY_IMAGE_EX + " FROM " + TABLE_DATA_EX + " WHERE " + KEY_ID_EX + " = ?";
+    private static final String SQL_EXERCISE_PAGE = "SELECT " + KEY_ID_EX + "," + KEY_NAME_EX + "," +
+            KEY_DESCIRPTION_EX + "," + KEY_IMAGE_EX + " FROM " + TABLE_DATA_EX +
+            " WHERE " + KEY_ID_EX + " > ? AND " + KEY_ID_EX + " <= ? ORDER BY " + KEY_ID_EX + " LIMIT ?";
+    private static final String SQL_EXERCISE_SET_PAGE = "SELECT " + KEY_ID_ES + "," + KEY_NAME_ES + "," +
+            KEY_EXERCISES_ES + " FROM " + TABLE_DATA_ES +
+            " WHERE " + KEY_ID_ES + " > ? AND " + KEY_ID_ES + " <= ? ORDER BY " + KEY_ID_ES + " LIMIT ?";
+
+    private final QueryStats stats = QueryStats.getInstance();
+
+    private final ExerciseCache exerciseCache = new ExerciseCache(EXERCISE_CACHE_SIZE);
+    private final ExerciseSearchIndex searchIndex;
+    private boolean searchIndexChecked = false;
+    private boolean vacuumPending = false;
 
     public PFASQLiteHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        searchIndex = new ExerciseSearchIndex(context);
+    }
+
+    /**
+     * @return the cache in front of the exercise table, e.g. to read its hit and miss counters
+     */
+    public ExerciseCache getExerciseCache() {
+        return exerciseCache;
+    }
+
+    /**
+     * Forgets everything derived from the data, e.g. after rows were changed by another connection.
+     * Exercises may have been renamed under the same ids, so the search index is emptied and
+     * rebuilt before its next use. Emptying it is persistent, a process that is killed before
+     * the next search still rebuilds it.
+     */
+    public void invalidateCaches() {
+        exerciseCache.clear();
+        searchIndex.clear();
+        searchIndexChecked = false;
+    }
+
+    /**
+     * Closes the connection after the database file was replaced, the next operation opens the new file.
+     */
+    public void reopen() {
+        close();
+        invalidateCaches();
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        for (Patch patch : PATCHES) {
-            patch.apply(db);
+        for (int i = 0; i < PATCHES.length; i++) {
+            runPatch(db, i, false);
         }
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         for (int i = oldVersion; i < newVersion; i++) {
-            PATCHES[i].apply(db);
+            runPatch(db, i, false);
         }
     }
 
     @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // version v is reached by applying PATCHES[v - 1]
         for (int i = oldVersion; i > newVersion; i--) {
-            PATCHES[i].revert(db);
+            runPatch(db, i - 1, true);
         }
     }
 
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) {
+            ChangeTracker.createTables(db);
+            RecordTracker.createTable(db);
+        }
+        // VACUUM cannot run inside the transaction of onUpgrade, so it is done here
+        if (vacuumPending && !db.isReadOnly()) {
+            vacuumPending = false;
+            vacuumIfWorthIt(db);
+        }
+    }
+
+    /**
+     * Applies or reverts a single patch atomically. SQLiteOpenHelper already runs
+     * onCreate, onUpgrade and onDowngrade in a transaction; the nested transaction makes
+     * a failing patch roll back the whole migration instead of leaving it half applied.
+     */
+    private void runPatch(SQLiteDatabase db, int index, boolean revert) {
+        long start = System.nanoTime();
+        Patch patch = PATCHES[index];
+        db.beginTransaction();
+        try {
+            if (revert) {
+                patch.revert(db);
+            } else {
+                patch.apply(db);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        vacuumPending |= patch.freesPages();
+        stats.record((revert ? "revertPatch" : "applyPatch") + index, start, 0);
+        Log.i("DATABASE", (revert ? "Reverted" : "Applied") + " patch " + index + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private static void vacuumIfWorthIt(SQLiteDatabase db) {
+        long pages = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+        long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        if (pages == 0 || (double) freePages / pages < VACUUM_FREE_PAGE_RATIO) {
+            return;
+        }
+        long start = System.nanoTime();
+        db.execSQL("VACUUM");
+        Log.i("DATABASE", "Vacuumed " + freePages + " of " + pages + " pages in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
 
     /**
      * Adds a single sampleData to our Table
@@ -192,6 +343,7 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * @param sampleData data that will be added
      */
     public void addWorkoutData(WorkoutSessionData sampleData) {
+        long start = System.nanoTime();
         SQLiteDatabase database = this.getWritableDatabase();
 
         //To adjust this class for your own data, please add your values here.
@@ -200,7 +352,7 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
         values.put(KEY_CALORIES, sampleData.getCALORIES());
 
         database.insert(TABLE_DATA, null, values);
-        database.close();
+        stats.record("addWorkoutData", start, 1);
     }
 
 
@@ -211,6 +363,7 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * @param sampleData data that will be added
      */
     public long addExerciseSet(ExerciseSet sampleData) {
+        long start = System.nanoTime();
         SQLiteDatabase database = this.getWritableDatabase();
 
 
@@ -229,7 +382,7 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
         values.put(KEY_EXERCISES_ES, exerciseList);
 
         long id = database.insert(TABLE_DATA_ES, null, values);
-        database.close();
+        stats.record("addExerciseSet", start, 1);
         return id;
     }
 
@@ -240,6 +393,7 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * @param sampleData data that will be added
      */
     public long addExercise(Exercise sampleData) {
+        long start = System.nanoTime();
         SQLiteDatabase database = this.getWritableDatabase();
 
         //To adjust this class for your own data, please add your values here.
@@ -249,7 +403,11 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
         values.put(KEY_IMAGE_EX, sampleData.getImage().toString());
 
         long id = database.insert(TABLE_DATA_EX, null, values);
-        database.close();
+        exerciseCache.remove((int) id);
+        if (id != -1) {
+            searchIndex.index(new Exercise((int) id, sampleData.getName(), sampleData.getDescription(), sampleData.getImage()));
+        }
+        stats.record("addExercise", start, 1);
         return id;
     }
 
@@ -261,6 +419,7 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * Only use this for undo options and re-insertions
      */
     public void addWorkoutDataWithID(WorkoutSessionData sampleData) {
+        long start = System.nanoTime();
         SQLiteDatabase database = this.getWritableDatabase();
 
         //To adjust this class for your own data, please add your values here.
@@ -270,9 +429,7 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
         values.put(KEY_CALORIES, sampleData.getCALORIES());
 
         database.insert(TABLE_DATA, null, values);
-
-        //always close the database after insertion
-        database.close();
+        stats.record("addWorkoutDataWithID", start, 1);
     }
 
 
@@ -284,6 +441,7 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * Only use this for undo options and re-insertions
      */
     public void addExerciseSetWithID(ExerciseSet sampleData) {
+        long start = System.nanoTime();
         SQLiteDatabase database = this.getWritableDatabase();
 
         String exerciseList = "";
@@ -302,9 +460,7 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
         values.put(KEY_EXERCISES_ES, exerciseList);
 
         database.insert(TABLE_DATA_ES, null, values);
-
-        //always close the database after insertion
-        database.close();
+        stats.record("addExerciseSetWithID", start, 1);
     }
 
 
@@ -316,6 +472,7 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * Only use this for undo options and re-insertions
      */
     public void addExerciseWithID(Exercise sampleData) {
+        long start = System.nanoTime();
         SQLiteDatabase database = this.getWritableDatabase();
 
         //To adjust this class for your own data, please add your values here.
@@ -325,10 +482,11 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
         values.put(KEY_DESCIRPTION_EX, sampleData.getDescription());
         values.put(KEY_IMAGE_EX, sampleData.getImage().toString());
 
-        database.insert(TABLE_DATA_EX, null, values);
-
-        //always close the database after insertion
-        database.close();
+        if (database.insert(TABLE_DATA_EX, null, values) != -1) {
+            searchIndex.index(sampleData);
+        }
+        exerciseCache.remove(sampleData.getID());
+        stats.record("addExerciseWithID", start, 1);
     }
 
 
@@ -338,66 +496,128 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * @return the sampleData that is requested.
      */
     public WorkoutSessionData getWorkoutData(int id) {
+        long start = System.nanoTime();
         SQLiteDatabase database = this.getWritableDatabase();
 
-        Log.d("DATABASE", Integer.toString(id));
-
-        Cursor cursor = database.query(TABLE_DATA, new String[]{KEY_ID,
-                        KEY_WORKOUT_TIME, KEY_CALORIES, KEY_TIMESTAMP}, KEY_ID + "=?",
-                new String[]{String.valueOf(id)}, null, null, null, null);
+        String[] args = new String[]{String.valueOf(id)};
+        Cursor cursor = database.rawQuery(SQL_WORKOUT_DATA_BY_ID, args);
 
         WorkoutSessionData data = new WorkoutSessionData();
+        int rows = 0;
 
-        if( cursor != null && cursor.moveToFirst() ){
-            data.setID(Integer.parseInt(cursor.getString(0)));
-            data.setWORKOUTTIME(Integer.parseInt(cursor.getString(1)));
-            data.setCALORIES(Integer.parseInt(cursor.getString(2)));
-
-            Log.d("DATABASE", "Read " + cursor.getString(1) + " from DB");
-            
+        try {
+            if (cursor.moveToFirst()) {
+                data.setID(Integer.parseInt(cursor.getString(0)));
+                data.setWORKOUTTIME(Integer.parseInt(cursor.getString(1)));
+                data.setCALORIES(Integer.parseInt(cursor.getString(2)));
+                rows = 1;
+
+                if (LOG_ROWS) {
+                    Log.d("DATABASE", "Read " + cursor.getString(1) + " from DB");
+                }
+            }
+        } finally {
             cursor.close();
         }
 
+        stats.record("getWorkoutData", start, rows, database, SQL_WORKOUT_DATA_BY_ID, args);
         return data;
     }
 
+    /**
+     * Sums up the workout data of every month in the given range with a single query.
+     *
+     * @param from first day in the format yyyyMMdd
+     * @param to   last day in the format yyyyMMdd
+     * @return one entry per month with workout data, its id is the month in the format yyyyMM
+     */
+    public List<WorkoutSessionData> getMonthlyWorkoutData(int from, int to) {
+        long start = System.nanoTime();
+        SQLiteDatabase database = this.getReadableDatabase();
+
+        String[] args = new String[]{String.valueOf(from), String.valueOf(to)};
+        Cursor cursor = database.rawQuery(SQL_MONTHLY_WORKOUT_DATA, args);
+
+        List<WorkoutSessionData> months = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                months.add(new WorkoutSessionData(cursor.getInt(0), cursor.getInt(1), cursor.getInt(2)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        stats.record("getMonthlyWorkoutData", start, months.size(), database, SQL_MONTHLY_WORKOUT_DATA, args);
+        return months;
+    }
+
+    /**
+     * Reads the workout data of all days in the given range with a single query on the
+     * primary key, so the cost depends on the number of days with workout data in the range.
+     *
+     * @param from first day in the format yyyyMMdd
+     * @param to   last day in the format yyyyMMdd
+     * @return one entry per day with workout data, ordered by day
+     */
+    public List<WorkoutSessionData> getWorkoutDataBetween(int from, int to) {
+        long start = System.nanoTime();
+        SQLiteDatabase database = this.getReadableDatabase();
+
+        String[] args = new String[]{String.valueOf(from), String.valueOf(to)};
+        Cursor cursor = database.rawQuery(SQL_WORKOUT_DATA_RANGE, args);
+
+        List<WorkoutSessionData> days = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                days.add(new WorkoutSessionData(cursor.getInt(0), cursor.getInt(1), cursor.getInt(2)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        stats.record("getWorkoutDataBetween", start, days.size(), database, SQL_WORKOUT_DATA_RANGE, args);
+        return days;
+    }
+
     /**
      * This method gets a single sampleData entry based on its ID
      * @param id of the sampleData that is requested, could be get by the get-method
      * @return the sampleData that is requested.
      */
     public ExerciseSet getExerciseSet(int id) {
+        long start = System.nanoTime();
         SQLiteDatabase database = this.getWritableDatabase();
 
-        Log.d("DATABASE", Integer.toString(id));
-
-        Cursor cursor = database.query(TABLE_DATA_ES, new String[]{KEY_ID_ES,
-                        KEY_NAME_ES, KEY_EXERCISES_ES}, KEY_ID + "=?",
-                new String[]{String.valueOf(id)}, null, null, null, null);
+        String[] args = new String[]{String.valueOf(id)};
+        Cursor cursor = database.rawQuery(SQL_EXERCISE_SET_BY_ID, args);
 
         ExerciseSet data = new ExerciseSet();
+        int rows = 0;
 
-        if( cursor != null && cursor.moveToFirst() ){
-            data.setID(Integer.parseInt(cursor.getString(0)));
-            data.setName(cursor.getString(1));
+        try {
+            if (cursor.moveToFirst()) {
+                data.setID(Integer.parseInt(cursor.getString(0)));
+                data.setName(cursor.getString(1));
 
-            ArrayList<Integer> exerciseList = new ArrayList<Integer>();
-            try {
-                JSONObject json = new JSONObject(cursor.getString(2));
-                JSONArray jArray = json.optJSONArray("uniqueArrays");
-                for (int i = 0; i < jArray.length(); i++) {
-                    exerciseList.add(Integer.parseInt(jArray.getString(i)));
+                ArrayList<Integer> exerciseList = new ArrayList<Integer>();
+                try {
+                    exerciseList.addAll(parseExerciseList(cursor.getString(2)));
+                } catch (JSONException e) {
+                    e.printStackTrace();
                 }
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
 
-            data.setExercises(exerciseList);
-
-            Log.d("DATABASE", "Read " + cursor.getString(1) + " from  ES DB");
+                data.setExercises(exerciseList);
+                rows = 1;
 
+                if (LOG_ROWS) {
+                    Log.d("DATABASE", "Read " + cursor.getString(1) + " from  ES DB");
+                }
+            }
+        } finally {
             cursor.close();
         }
+
+        stats.record("getExerciseSet", start, rows, database, SQL_EXERCISE_SET_BY_ID, args);
         return data;
     }
 
@@ -407,36 +627,138 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * @return the sampleData that is requested.
      */
     public Exercise getExercise(int id) {
-        SQLiteDatabase database = this.getWritableDatabase();
+        Exercise cached = exerciseCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
 
-        Log.d("DATABASE", Integer.toString(id));
+        long start = System.nanoTime();
+        SQLiteDatabase database = this.getWritableDatabase();
 
-        Cursor cursor = database.query(TABLE_DATA_EX, new String[]{KEY_ID_EX,
-                        KEY_NAME_EX, KEY_DESCIRPTION_EX, KEY_IMAGE_EX}, KEY_ID + "=?",
-                new String[]{String.valueOf(id)}, null, null, null, null);
+        String[] args = new String[]{String.valueOf(id)};
+        Cursor cursor = database.rawQuery(SQL_EXERCISE_BY_ID, args);
 
         Exercise data = new Exercise(0, null, null, null);
+        int rows = 0;
 
-        if( cursor != null && cursor.moveToFirst() ){
-            data.setID(Integer.parseInt(cursor.getString(0)));
-            data.setName(cursor.getString(1));
-            data.setDescription(cursor.getString(2));
+        try {
+            if (cursor.moveToFirst()) {
+                data = readExercise(cursor);
+                exerciseCache.put(data);
+                rows = 1;
 
+                if (LOG_ROWS) {
+                    Log.d("DATABASE", "Read " + cursor.getString(1) + " from  EX DB");
+                }
+            }
+        } finally {
+            cursor.close();
+        }
 
-            String uriString = cursor.getString(3);
-            if(uriString == null) {
-                uriString = "";
+        stats.record("getExercise", start, rows, database, SQL_EXERCISE_BY_ID, args);
+        return data;
+    }
+
+    /**
+     * Gets the exercises with the given ids. Exercises that are not cached yet are
+     * loaded with a single query.
+     * @param ids of the exercises, may contain duplicates
+     * @return the exercises in the order of the ids, unknown ids are skipped
+     */
+    public List<Exercise> getExercises(List<Integer> ids) {
+        Map<Integer, Exercise> found = new HashMap<>();
+        Set<Integer> missing = new HashSet<>();
+        for (Integer id : ids) {
+            if (found.containsKey(id) || missing.contains(id)) {
+                continue;
             }
+            Exercise cached = exerciseCache.get(id);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
 
-            data.setImage(Uri.parse(uriString));
+        if (!missing.isEmpty()) {
+            SQLiteDatabase database = this.getWritableDatabase();
+            List<Integer> missingIds = new ArrayList<>(missing);
+            for (int start = 0; start < missingIds.size(); start += MAX_BATCH_PARAMETERS) {
+                List<Integer> chunk = missingIds.subList(start, Math.min(start + MAX_BATCH_PARAMETERS, missingIds.size()));
+                String[] args = new String[chunk.size()];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = Integer.toString(chunk.get(i));
+                }
+                long queryStart = System.nanoTime();
+                String sql = "SELECT " + KEY_ID_EX + "," + KEY_NAME_EX + "," + KEY_DESCIRPTION_EX + "," + KEY_IMAGE_EX +
+                        " FROM " + TABLE_DATA_EX + " WHERE " + KEY_ID_EX + " IN (" + placeholders(args.length) + ")";
+                Cursor cursor = database.rawQuery(sql, args);
+                try {
+                    while (cursor.moveToNext()) {
+                        Exercise exercise = readExercise(cursor);
+                        exerciseCache.put(exercise);
+                        found.put(exercise.getID(), exercise);
+                    }
+                } finally {
+                    cursor.close();
+                }
+                stats.record("getExercises", queryStart, args.length, database, sql, args);
+            }
+        }
 
-            Log.d("DATABASE", "Read " + cursor.getString(1) + " from  EX DB");
+        List<Exercise> exercises = new ArrayList<>();
+        Set<Integer> returned = new HashSet<>();
+        for (Integer id : ids) {
+            Exercise exercise = found.get(id);
+            if (exercise != null) {
+                // hand out a separate object for repeated ids
+                exercises.add(returned.add(id) ? exercise
+                        : new Exercise(exercise.getID(), exercise.getName(), exercise.getDescription(), exercise.getImage()));
+            }
+        }
+        return exercises;
+    }
 
-            cursor.close();
+    /**
+     * Full text search over name and description of all exercises, usable for
+     * search-as-you-type. The search index is checked against the exercise table on
+     * the first search and rebuilt if they differ. This only catches added or removed
+     * exercises, changes made by other connections have to go through {@link #invalidateCaches()}.
+     * @param query words the exercises have to contain, the last one may be incomplete
+     * @return the matching exercises ordered by id
+     */
+    public List<Exercise> searchExercises(String query) {
+        if (!searchIndexChecked) {
+            Cursor cursor = getReadableDatabase().rawQuery("SELECT count(*), total(" + KEY_ID_EX + ") FROM " + TABLE_DATA_EX, null);
+            try {
+                if (cursor.moveToFirst() && !searchIndex.isInSync(cursor.getLong(0), cursor.getLong(1))) {
+                    rebuildSearchIndex();
+                }
+            } finally {
+                cursor.close();
+            }
+            searchIndexChecked = true;
         }
+        long start = System.nanoTime();
+        List<Integer> ids = searchIndex.search(query);
+        stats.record("searchExercises", start, ids.size());
+        return getExercises(ids);
+    }
 
-        return data;
+    /**
+     * Refills the full text index from the exercise table.
+     */
+    public void rebuildSearchIndex() {
+        Log.i("DATABASE", "Rebuilding exercise search index");
+        searchIndex.rebuild(getAllExercise(getReadableDatabase()));
+    }
 
+    private static Exercise readExercise(Cursor cursor) {
+        String uriString = cursor.getString(3);
+        if(uriString == null) {
+            uriString = "";
+        }
+        return new Exercise(cursor.getInt(0), cursor.getString(1), cursor.getString(2), Uri.parse(uriString));
     }
 
     /**
@@ -445,6 +767,7 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * @return A list of all available sampleData in the Database
      */
     public List<WorkoutSessionData> getAllWorkoutData() {
+        long start = System.nanoTime();
         List<WorkoutSessionData> sampleDataList = new ArrayList<WorkoutSessionData>();
 
         String selectQuery = "SELECT  * FROM " + TABLE_DATA;
@@ -466,7 +789,9 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
                 sampleDataList.add(sampleData);
             } while (cursor.moveToNext());
         }
+        cursor.close();
 
+        stats.record("getAllWorkoutData", start, sampleDataList.size(), database, selectQuery, null);
         return sampleDataList;
     }
 
@@ -477,6 +802,7 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * @return A list of all available sampleData in the Database
      */
     public List<ExerciseSet> getAllExerciseSet() {
+        long start = System.nanoTime();
         List<ExerciseSet> sampleDataList = new ArrayList<ExerciseSet>();
 
         String selectQuery = "SELECT  * FROM " + TABLE_DATA_ES;
@@ -508,11 +834,15 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
                 sampleData.setExercises(exerciseList);
 
                 sampleDataList.add(sampleData);
-                Log.d("DATABASE", "Read " + cursor.getString(1) + " from  ES DB");
+                if (LOG_ROWS) {
+                    Log.d("DATABASE", "Read " + cursor.getString(1) + " from  ES DB");
+                }
 
             } while (cursor.moveToNext());
         }
+        cursor.close();
 
+        stats.record("getAllExerciseSet", start, sampleDataList.size(), database, selectQuery, null);
         return sampleDataList;
     }
 
@@ -523,7 +853,12 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * @return A list of all available sampleData in the Database
      */
     public List<Exercise> getAllExercise() {
-        return getAllExercise(getWritableDatabase());
+        long start = System.nanoTime();
+        SQLiteDatabase database = getWritableDatabase();
+        List<Exercise> exercises = getAllExercise(database);
+        exerciseCache.putAll(exercises);
+        stats.record("getAllExercise", start, exercises.size(), database, "SELECT  * FROM " + TABLE_DATA_EX, null);
+        return exercises;
     }
 
     private static List<Exercise> getAllExercise(SQLiteDatabase database) {
@@ -552,22 +887,82 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
                 sampleData.setImage(Uri.parse(uriString));
 
                 sampleDataList.add(sampleData);
-                Log.d("DATABASE", "Read " + cursor.getString(1) + " from  ES DB");
+                if (LOG_ROWS) {
+                    Log.d("DATABASE", "Read " + cursor.getString(1) + " from  EX DB");
+                }
 
             } while (cursor.moveToNext());
         }
+        cursor.close();
 
         return sampleDataList;
     }
 
 
 
+    /**
+     * Loads a page of exercises ordered by id, starting after the given id.
+     * Uses the primary key index, so the cost does not depend on the page position.
+     * @param afterId only exercises with a greater id are returned
+     * @param maxId only exercises with a smaller or equal id are returned
+     * @param limit maximum number of exercises, -1 for no limit
+     * @return the page of exercises
+     */
+    public List<Exercise> getExercisePage(int afterId, int maxId, int limit) {
+        long start = System.nanoTime();
+        List<Exercise> exercises = new ArrayList<>();
+        SQLiteDatabase database = getReadableDatabase();
+        String[] args = new String[]{Integer.toString(afterId), Integer.toString(maxId), Integer.toString(limit)};
+        Cursor cursor = database.rawQuery(SQL_EXERCISE_PAGE, args);
+        try {
+            while (cursor.moveToNext()) {
+                exercises.add(readExercise(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        exerciseCache.putAll(exercises);
+        stats.record("getExercisePage", start, exercises.size(), database, SQL_EXERCISE_PAGE, args);
+        return exercises;
+    }
+
+    /**
+     * Loads a page of exercise sets ordered by id, starting after the given id.
+     * @param afterId only sets with a greater id are returned
+     * @param maxId only sets with a smaller or equal id are returned
+     * @param limit maximum number of sets, -1 for no limit
+     * @return the page of exercise sets
+     */
+    public List<ExerciseSet> getExerciseSetPage(int afterId, int maxId, int limit) {
+        long start = System.nanoTime();
+        List<ExerciseSet> exerciseSets = new ArrayList<>();
+        SQLiteDatabase database = getReadableDatabase();
+        String[] args = new String[]{Integer.toString(afterId), Integer.toString(maxId), Integer.toString(limit)};
+        Cursor cursor = database.rawQuery(SQL_EXERCISE_SET_PAGE, args);
+        try {
+            while (cursor.moveToNext()) {
+                ArrayList<Integer> exerciseList = new ArrayList<Integer>();
+                try {
+                    exerciseList.addAll(parseExerciseList(cursor.getString(2)));
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                }
+                exerciseSets.add(new ExerciseSet(cursor.getInt(0), cursor.getString(1), exerciseList));
+            }
+        } finally {
+            cursor.close();
+        }
+        stats.record("getExerciseSetPage", start, exerciseSets.size(), database, SQL_EXERCISE_SET_PAGE, args);
+        return exerciseSets;
+    }
+
     /**
      * Updates a database entry.
      * @param workoutData
      * @return actually makes the update
      */
     public int updateWorkoutData(WorkoutSessionData workoutData) {
+        long start = System.nanoTime();
         SQLiteDatabase database = this.getWritableDatabase();
 
         //To adjust this class for your own data, please add your values here.
@@ -575,8 +970,47 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
         values.put(KEY_WORKOUT_TIME, workoutData.getWORKOUTTIME());
         values.put(KEY_CALORIES, workoutData.getCALORIES());
 
-        return database.update(TABLE_DATA, values, KEY_ID + " = ?",
+        int rows = database.update(TABLE_DATA, values, KEY_ID + " = ?",
                 new String[] { String.valueOf(workoutData.getID()) });
+        stats.record("updateWorkoutData", start, rows);
+        return rows;
+    }
+
+    /**
+     * Adds workout time and calories to a day, the session of the day is created if it is
+     * the first one. The records are updated in the same transaction.
+     * @param id day in the format yyyyMMdd
+     */
+    public void addToWorkoutData(int id, int time, int calories) {
+        long start = System.nanoTime();
+        SQLiteDatabase database = this.getWritableDatabase();
+        String[] args = new String[] { String.valueOf(id) };
+
+        database.beginTransaction();
+        try {
+            int previousTime = 0;
+            Cursor cursor = database.rawQuery(SQL_WORKOUT_DATA_BY_ID, args);
+            try {
+                if (cursor.moveToFirst()) {
+                    previousTime = cursor.getInt(1);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            ContentValues values = new ContentValues();
+            values.put(KEY_ID, id);
+            values.put(KEY_WORKOUT_TIME, 0);
+            values.put(KEY_CALORIES, 0);
+            database.insertWithOnConflict(TABLE_DATA, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+            database.execSQL(SQL_ADD_TO_WORKOUT_DATA, new Object[] { time, calories, id });
+
+            new RecordTracker(database).add(id, previousTime, time, calories);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        stats.record("addToWorkoutData", start, 1);
     }
 
     /**
@@ -585,6 +1019,7 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * @return actually makes the update
      */
     public int updateExerciseSet(ExerciseSet exerciseSet) throws JSONException {
+        long start = System.nanoTime();
         SQLiteDatabase database = this.getWritableDatabase();
 
         JSONObject json = new JSONObject();
@@ -596,8 +1031,10 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
         values.put(KEY_NAME_ES, exerciseSet.getName());
         values.put(KEY_EXERCISES_ES, exerciseList);
 
-        return database.update(TABLE_DATA_ES, values, KEY_ID_ES + " = ?",
+        int rows = database.update(TABLE_DATA_ES, values, KEY_ID_ES + " = ?",
                 new String[] { String.valueOf(exerciseSet.getID()) });
+        stats.record("updateExerciseSet", start, rows);
+        return rows;
     }
 
 
@@ -607,6 +1044,7 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * @return actually makes the update
      */
     public int updateExercise(Exercise exercise){
+        long start = System.nanoTime();
         SQLiteDatabase database = this.getWritableDatabase();
 
         //To adjust this class for your own data, please add your values here.
@@ -615,8 +1053,14 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
         values.put(KEY_DESCIRPTION_EX, exercise.getDescription());
         values.put(KEY_IMAGE_EX, exercise.getImage().toString());
 
-        return database.update(TABLE_DATA_EX, values, KEY_ID_EX + " = ?",
+        exerciseCache.remove(exercise.getID());
+        int rows = database.update(TABLE_DATA_EX, values, KEY_ID_EX + " = ?",
                 new String[] { String.valueOf(exercise.getID()) });
+        if (rows > 0) {
+            searchIndex.index(exercise);
+        }
+        stats.record("updateExercise", start, rows);
+        return rows;
     }
 
     /**
@@ -625,11 +1069,11 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * @param sampleData that will be deleted
      */
     public void deleteWorkoutData(WorkoutSessionData sampleData) {
+        long start = System.nanoTime();
         SQLiteDatabase database = this.getWritableDatabase();
-        database.delete(TABLE_DATA, KEY_ID + " = ?",
+        int rows = database.delete(TABLE_DATA, KEY_ID + " = ?",
                 new String[] { Integer.toString(sampleData.getID()) });
-        //always close the DB after deletion of single entries
-        database.close();
+        stats.record("deleteWorkoutData", start, rows);
     }
 
     /**
@@ -638,11 +1082,11 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * @param sampleData that will be deleted
      */
     public void deleteExerciseSet(ExerciseSet sampleData) {
+        long start = System.nanoTime();
         SQLiteDatabase database = this.getWritableDatabase();
-        database.delete(TABLE_DATA_ES, KEY_ID_ES + " = ?",
+        int rows = database.delete(TABLE_DATA_ES, KEY_ID_ES + " = ?",
                 new String[] { Integer.toString(sampleData.getID()) });
-        //always close the DB after deletion of single entries
-        database.close();
+        stats.record("deleteExerciseSet", start, rows);
     }
 
     /**
@@ -651,11 +1095,159 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
      * @param sampleData that will be deleted
      */
     public void deleteExercise(Exercise sampleData) {
+        long start = System.nanoTime();
         SQLiteDatabase database = this.getWritableDatabase();
-        database.delete(TABLE_DATA_EX, KEY_ID_EX + " = ?",
+        int rows = database.delete(TABLE_DATA_EX, KEY_ID_EX + " = ?",
                 new String[] { Integer.toString(sampleData.getID()) });
-        //always close the DB after deletion of single entries
-        database.close();
+        exerciseCache.remove(sampleData.getID());
+        searchIndex.remove(sampleData.getID());
+        stats.record("deleteExercise", start, rows);
+    }
+
+    /**
+     * Deletes several exercises at once and removes them from every exercise set
+     * that contains them. Everything happens in a single transaction.
+     * @param exercises that will be deleted
+     */
+    public void deleteExercises(List<Exercise> exercises) {
+        if (exercises.isEmpty()) {
+            return;
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (Exercise exercise : exercises) {
+            ids.add(exercise.getID());
+        }
+
+        long start = System.nanoTime();
+        SQLiteDatabase database = this.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            deleteByIds(database, TABLE_DATA_EX, KEY_ID_EX, ids);
+
+            // fix up all exercise sets in one pass, only changed rows are written
+            SQLiteStatement update = database.compileStatement("UPDATE " + TABLE_DATA_ES +
+                    " SET " + KEY_EXERCISES_ES + " = ? WHERE " + KEY_ID_ES + " = ?");
+            Cursor cursor = database.query(TABLE_DATA_ES, new String[]{KEY_ID_ES, KEY_EXERCISES_ES},
+                    null, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    try {
+                        List<Integer> exerciseList = parseExerciseList(cursor.getString(1));
+                        if (exerciseList.removeAll(ids)) {
+                            JSONObject json = new JSONObject();
+                            json.put("uniqueArrays", new JSONArray(exerciseList));
+                            update.bindString(1, json.toString());
+                            update.bindLong(2, cursor.getLong(0));
+                            update.executeUpdateDelete();
+                        }
+                    } catch (JSONException e) {
+                        Log.e("DATABASE", "Could not update exercise set " + cursor.getLong(0), e);
+                    }
+                }
+            } finally {
+                cursor.close();
+                update.close();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        // only reached if the transaction was committed, a rollback throws
+        for (Integer id : ids) {
+            exerciseCache.remove(id);
+        }
+        searchIndex.removeAll(ids);
+        stats.record("deleteExercises", start, ids.size());
+    }
+
+    /**
+     * Deletes several exercise sets at once in a single transaction.
+     * @param exerciseSets that will be deleted
+     */
+    public void deleteExerciseSets(List<ExerciseSet> exerciseSets) {
+        if (exerciseSets.isEmpty()) {
+            return;
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (ExerciseSet exerciseSet : exerciseSets) {
+            ids.add(exerciseSet.getID());
+        }
+
+        long start = System.nanoTime();
+        SQLiteDatabase database = this.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            deleteByIds(database, TABLE_DATA_ES, KEY_ID_ES, ids);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        stats.record("deleteExerciseSets", start, ids.size());
+    }
+
+    /**
+     * Deletes all rows whose key is in the given set using {@code IN (...)} statements,
+     * split into chunks so the parameter limit of SQLite is not exceeded.
+     */
+    private static void deleteByIds(SQLiteDatabase database, String table, String key, Set<Integer> ids) {
+        List<String> args = new ArrayList<>();
+        for (Integer id : ids) {
+            args.add(Integer.toString(id));
+        }
+        for (int start = 0; start < args.size(); start += MAX_BATCH_PARAMETERS) {
+            List<String> chunk = args.subList(start, Math.min(start + MAX_BATCH_PARAMETERS, args.size()));
+            database.delete(table, key + " IN (" + placeholders(chunk.size()) + ")",
+                    chunk.toArray(new String[chunk.size()]));
+        }
+    }
+
+    /**
+     * @return the distinct image uris of all exercises in the given database
+     */
+    public static List<String> getImageUris(SQLiteDatabase db) {
+        List<String> uris = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT DISTINCT " + KEY_IMAGE_EX + " FROM " + TABLE_DATA_EX +
+                " WHERE " + KEY_IMAGE_EX + " IS NOT NULL", null);
+        try {
+            while (cursor.moveToNext()) {
+                uris.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return uris;
+    }
+
+    /**
+     * Points all exercises of the given database that show the image oldUri to newUri.
+     */
+    public static void replaceImageUri(SQLiteDatabase db, String oldUri, String newUri) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_IMAGE_EX, newUri);
+        db.update(TABLE_DATA_EX, values, KEY_IMAGE_EX + " = ?", new String[]{oldUri});
+    }
+
+    /**
+     * @return a comma separated list of count question marks
+     */
+    private static String placeholders(int count) {
+        char[] placeholders = new char[count * 2 - 1];
+        Arrays.fill(placeholders, ',');
+        for (int i = 0; i < placeholders.length; i += 2) {
+            placeholders[i] = '?';
+        }
+        return new String(placeholders);
+    }
+
+    private static List<Integer> parseExerciseList(String exercises) throws JSONException {
+        List<Integer> exerciseList = new ArrayList<Integer>();
+        JSONArray jArray = new JSONObject(exercises).optJSONArray("uniqueArrays");
+        if (jArray != null) {
+            for (int i = 0; i < jArray.length(); i++) {
+                exerciseList.add(Integer.parseInt(jArray.getString(i)));
+            }
+        }
+        return exerciseList;
     }
 
     /**
@@ -683,6 +1275,8 @@ public class PFASQLiteHelper extends SQLiteOpenHelper {
     public void deleteAllExercise() {
         SQLiteDatabase database = this.getWritableDatabase();
         database.execSQL("delete from "+ TABLE_DATA_EX);
+        exerciseCache.clear();
+        searchIndex.clear();
     }
 
 }
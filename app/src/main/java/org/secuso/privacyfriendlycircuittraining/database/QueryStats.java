@@ -0,0 +1,171 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the latency and the number of rows of every database operation of this process.
+ * Latencies are kept in a histogram with power-of-two millisecond buckets per operation.
+ * Operations slower than {@link #SLOW_QUERY_THRESHOLD_MS} are logged together with the
+ * query plan of their statement.
+ *
+ * @version 20261019
+ */
+public class QueryStats {
+
+    private static final String LOG_TAG = "QueryStats";
+
+    // one frame at 60 fps, anything above would cause jank if run on the main thread
+    public static final long SLOW_QUERY_THRESHOLD_MS = 16;
+
+    // bucket i counts operations that took less than 2^i ms, the last one everything above
+    private static final int BUCKETS = 12;
+
+    private static final QueryStats instance = new QueryStats();
+
+    private final Map<String, OperationStats> operations = new TreeMap<>();
+
+    private QueryStats() {
+    }
+
+    public static QueryStats getInstance() {
+        return instance;
+    }
+
+    /**
+     * Records an operation without a statement that could be explained, e.g. a write.
+     *
+     * @param operation name of the operation
+     * @param startNanos value of {@link System#nanoTime()} when the operation started
+     * @param rows number of rows read or written
+     */
+    public void record(String operation, long startNanos, int rows) {
+        record(operation, startNanos, rows, null, null, null);
+    }
+
+    /**
+     * Records an operation. If it was slow, the query plan of the statement is logged.
+     *
+     * @param operation  name of the operation
+     * @param startNanos value of {@link System#nanoTime()} when the operation started
+     * @param rows       number of rows read or written
+     * @param db         database the statement was run on
+     * @param sql        the statement, may be null
+     * @param args       arguments of the statement
+     */
+    public void record(String operation, long startNanos, int rows, SQLiteDatabase db, String sql, String[] args) {
+        long nanos = System.nanoTime() - startNanos;
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+
+        synchronized (operations) {
+            OperationStats stats = operations.get(operation);
+            if (stats == null) {
+                stats = new OperationStats();
+                operations.put(operation, stats);
+            }
+            stats.add(nanos, millis, rows);
+        }
+
+        if (millis >= SLOW_QUERY_THRESHOLD_MS) {
+            Log.w(LOG_TAG, "Slow database operation " + operation + ": " + millis + " ms, " + rows + " rows");
+            if (db != null && sql != null) {
+                Log.w(LOG_TAG, explain(db, sql, args));
+            }
+        }
+    }
+
+    private static String explain(SQLiteDatabase db, String sql, String[] args) {
+        StringBuilder plan = new StringBuilder("Query plan of ").append(sql);
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+            int detail = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.append("\n  ").append(cursor.getString(detail));
+            }
+        } catch (RuntimeException e) {
+            plan.append("\n  not available: ").append(e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return plan.toString();
+    }
+
+    public void reset() {
+        synchronized (operations) {
+            operations.clear();
+        }
+    }
+
+    /**
+     * @return a human readable summary of all recorded operations
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        synchronized (operations) {
+            for (Map.Entry<String, OperationStats> entry : operations.entrySet()) {
+                OperationStats stats = entry.getValue();
+                summary.append(entry.getKey()).append('\n');
+                summary.append(String.format(Locale.US, "  %d calls, avg %.2f ms, max %d ms, %d rows%n",
+                        stats.count, stats.totalNanos / 1e6 / stats.count, stats.maxMillis, stats.rows));
+                summary.append("  ");
+                for (int i = 0; i < BUCKETS; i++) {
+                    if (stats.histogram[i] == 0) {
+                        continue;
+                    }
+                    if (i == BUCKETS - 1) {
+                        summary.append(">=").append(1 << (i - 1));
+                    } else {
+                        summary.append('<').append(1 << i);
+                    }
+                    summary.append("ms:").append(stats.histogram[i]).append(' ');
+                }
+                summary.append('\n');
+            }
+        }
+        return summary.toString();
+    }
+
+    private static class OperationStats {
+        private long count;
+        private long totalNanos;
+        private long maxMillis;
+        private long rows;
+        private final long[] histogram = new long[BUCKETS];
+
+        void add(long nanos, long millis, int rows) {
+            count++;
+            totalNanos += nanos;
+            maxMillis = Math.max(maxMillis, millis);
+            this.rows += rows;
+
+            int bucket = 0;
+            while (bucket < BUCKETS - 1 && millis >= (1L << bucket)) {
+                bucket++;
+            }
+            histogram[bucket]++;
+        }
+    }
+}
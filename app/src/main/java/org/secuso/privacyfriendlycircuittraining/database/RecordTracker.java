@@ -0,0 +1,267 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import org.secuso.privacyfriendlycircuittraining.helpers.DateKeys;
+import org.secuso.privacyfriendlycircuittraining.models.WorkoutRecords;
+
+import java.util.Locale;
+
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.KEY_CALORIES;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.KEY_ID;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.KEY_WORKOUT_TIME;
+import static org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper.TABLE_DATA;
+
+/**
+ * Keeps streaks, personal records and totals of the workout sessions up to date.
+ * <p>
+ * The records live in a table with a single row. Every saved workout updates them with a
+ * constant number of steps, because the running totals of the latest week and month are
+ * stored as well. Everything is derived from the workout sessions, so the row can be
+ * rebuilt with one pass over them, e.g. after a restore or when the first day of the week
+ * changed.
+ *
+ * @version 20261019
+ */
+public class RecordTracker {
+
+    private static final String LOG_TAG = "RecordTracker";
+
+    public static final String TABLE_RECORDS = "WORKOUT_RECORDS";
+
+    private static final String KEY_ROW = "id";
+    private static final String KEY_FIRST_DAY_OF_WEEK = "first_day_of_week";
+    private static final String KEY_TOTAL_TIME = "total_time";
+    private static final String KEY_TOTAL_CALORIES = "total_calories";
+    private static final String KEY_WORKOUT_DAYS = "workout_days";
+    private static final String KEY_LAST_DAY = "last_day";
+    private static final String KEY_CURRENT_STREAK = "current_streak";
+    private static final String KEY_LONGEST_STREAK = "longest_streak";
+    private static final String KEY_BEST_DAY = "best_day";
+    private static final String KEY_BEST_DAY_TIME = "best_day_time";
+    private static final String KEY_BEST_WEEK = "best_week";
+    private static final String KEY_BEST_WEEK_TIME = "best_week_time";
+    private static final String KEY_BEST_MONTH = "best_month";
+    private static final String KEY_BEST_MONTH_TIME = "best_month_time";
+    private static final String KEY_CURRENT_WEEK = "current_week";
+    private static final String KEY_CURRENT_WEEK_TIME = "current_week_time";
+    private static final String KEY_CURRENT_MONTH = "current_month";
+    private static final String KEY_CURRENT_MONTH_TIME = "current_month_time";
+
+    private static final String[] COLUMNS = {KEY_FIRST_DAY_OF_WEEK, KEY_TOTAL_TIME, KEY_TOTAL_CALORIES,
+            KEY_WORKOUT_DAYS, KEY_LAST_DAY, KEY_CURRENT_STREAK, KEY_LONGEST_STREAK,
+            KEY_BEST_DAY, KEY_BEST_DAY_TIME, KEY_BEST_WEEK, KEY_BEST_WEEK_TIME, KEY_BEST_MONTH, KEY_BEST_MONTH_TIME,
+            KEY_CURRENT_WEEK, KEY_CURRENT_WEEK_TIME, KEY_CURRENT_MONTH, KEY_CURRENT_MONTH_TIME};
+
+    private final SQLiteDatabase db;
+
+    public RecordTracker(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    /**
+     * Creates the records table if it does not exist. The records are rebuilt if the row is
+     * missing, e.g. after a migration or the restore of an older backup, or if they were
+     * computed with another first day of the week.
+     */
+    static void createTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_RECORDS + "(" +
+                KEY_ROW + " INTEGER PRIMARY KEY CHECK (" + KEY_ROW + " = 1)," +
+                KEY_FIRST_DAY_OF_WEEK + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_TOTAL_TIME + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_TOTAL_CALORIES + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_WORKOUT_DAYS + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_LAST_DAY + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_CURRENT_STREAK + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_LONGEST_STREAK + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_BEST_DAY + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_BEST_DAY_TIME + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_BEST_WEEK + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_BEST_WEEK_TIME + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_BEST_MONTH + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_BEST_MONTH_TIME + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_CURRENT_WEEK + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_CURRENT_WEEK_TIME + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_CURRENT_MONTH + " INTEGER NOT NULL DEFAULT 0," +
+                KEY_CURRENT_MONTH_TIME + " INTEGER NOT NULL DEFAULT 0);");
+
+        RecordTracker tracker = new RecordTracker(db);
+        WorkoutRecords records = tracker.read();
+        if (records == null || records.getFirstDayOfWeek() != firstDayOfWeek()) {
+            tracker.rebuild();
+        }
+    }
+
+    private static int firstDayOfWeek() {
+        return DateKeys.firstDayOfWeek(Locale.getDefault());
+    }
+
+    /**
+     * @return the stored records or null if there are none yet
+     */
+    public WorkoutRecords read() {
+        Cursor cursor = db.query(TABLE_RECORDS, COLUMNS, KEY_ROW + " = 1", null, null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            WorkoutRecords records = new WorkoutRecords();
+            records.setFirstDayOfWeek(cursor.getInt(0));
+            records.setTotalTime(cursor.getInt(1));
+            records.setTotalCalories(cursor.getInt(2));
+            records.setWorkoutDays(cursor.getInt(3));
+            records.setLastDay(cursor.getInt(4));
+            records.setCurrentStreak(cursor.getInt(5));
+            records.setLongestStreak(cursor.getInt(6));
+            records.setBestDay(cursor.getInt(7));
+            records.setBestDayTime(cursor.getInt(8));
+            records.setBestWeek(cursor.getInt(9));
+            records.setBestWeekTime(cursor.getInt(10));
+            records.setBestMonth(cursor.getInt(11));
+            records.setBestMonthTime(cursor.getInt(12));
+            records.setCurrentWeek(cursor.getInt(13));
+            records.setCurrentWeekTime(cursor.getInt(14));
+            records.setCurrentMonth(cursor.getInt(15));
+            records.setCurrentMonthTime(cursor.getInt(16));
+            return records;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void write(WorkoutRecords records) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_ROW, 1);
+        values.put(KEY_FIRST_DAY_OF_WEEK, records.getFirstDayOfWeek());
+        values.put(KEY_TOTAL_TIME, records.getTotalTime());
+        values.put(KEY_TOTAL_CALORIES, records.getTotalCalories());
+        values.put(KEY_WORKOUT_DAYS, records.getWorkoutDays());
+        values.put(KEY_LAST_DAY, records.getLastDay());
+        values.put(KEY_CURRENT_STREAK, records.getCurrentStreak());
+        values.put(KEY_LONGEST_STREAK, records.getLongestStreak());
+        values.put(KEY_BEST_DAY, records.getBestDay());
+        values.put(KEY_BEST_DAY_TIME, records.getBestDayTime());
+        values.put(KEY_BEST_WEEK, records.getBestWeek());
+        values.put(KEY_BEST_WEEK_TIME, records.getBestWeekTime());
+        values.put(KEY_BEST_MONTH, records.getBestMonth());
+        values.put(KEY_BEST_MONTH_TIME, records.getBestMonthTime());
+        values.put(KEY_CURRENT_WEEK, records.getCurrentWeek());
+        values.put(KEY_CURRENT_WEEK_TIME, records.getCurrentWeekTime());
+        values.put(KEY_CURRENT_MONTH, records.getCurrentMonth());
+        values.put(KEY_CURRENT_MONTH_TIME, records.getCurrentMonthTime());
+        db.insertWithOnConflict(TABLE_RECORDS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Updates the records after workout time and calories were added to a day.
+     * Should run in the transaction that updated the workout session.
+     *
+     * @param day          day in the format yyyyMMdd
+     * @param previousTime workout time of the day before it was added to
+     */
+    public void add(int day, int previousTime, int time, int calories) {
+        long start = System.nanoTime();
+        WorkoutRecords records = read();
+        if (records == null || !add(records, day, previousTime, time, calories)) {
+            // e.g. the clock was set back, the order of the days cannot be relied on
+            rebuild();
+            return;
+        }
+        write(records);
+        QueryStats.getInstance().record("addRecords", start, 1);
+    }
+
+    /**
+     * Computes the records from scratch with one pass over all workout sessions.
+     */
+    public void rebuild() {
+        long start = System.nanoTime();
+        WorkoutRecords records = new WorkoutRecords();
+        records.setFirstDayOfWeek(firstDayOfWeek());
+
+        Cursor cursor = db.query(TABLE_DATA, new String[]{KEY_ID, KEY_WORKOUT_TIME, KEY_CALORIES},
+                null, null, null, null, KEY_ID);
+        int rows = 0;
+        try {
+            while (cursor.moveToNext()) {
+                add(records, cursor.getInt(0), 0, cursor.getInt(1), cursor.getInt(2));
+                rows++;
+            }
+        } finally {
+            cursor.close();
+        }
+        write(records);
+
+        QueryStats.getInstance().record("rebuildRecords", start, rows);
+        Log.d(LOG_TAG, "Rebuilt records from " + rows + " workout sessions");
+    }
+
+    /**
+     * Adds a workout to the records in place.
+     *
+     * @return false if the day is older than the latest week, month or streak, then the
+     * records cannot be updated incrementally
+     */
+    private static boolean add(WorkoutRecords records, int day, int previousTime, int time, int calories) {
+        int epochDay = DateKeys.toEpochDay(day);
+        int week = DateKeys.fromEpochDay(DateKeys.weekStart(epochDay, records.getFirstDayOfWeek()));
+        int month = day / 100;
+        boolean newWorkoutDay = previousTime == 0 && time > 0;
+        if (week < records.getCurrentWeek() || month < records.getCurrentMonth()
+                || newWorkoutDay && day < records.getLastDay()) {
+            return false;
+        }
+
+        records.setTotalTime(records.getTotalTime() + time);
+        records.setTotalCalories(records.getTotalCalories() + calories);
+
+        if (newWorkoutDay) {
+            boolean continued = records.getLastDay() != 0
+                    && DateKeys.toEpochDay(records.getLastDay()) == epochDay - 1;
+            records.setCurrentStreak(continued ? records.getCurrentStreak() + 1 : 1);
+            records.setLongestStreak(Math.max(records.getLongestStreak(), records.getCurrentStreak()));
+            records.setWorkoutDays(records.getWorkoutDays() + 1);
+            records.setLastDay(day);
+        }
+
+        int dayTime = previousTime + time;
+        if (dayTime > records.getBestDayTime()) {
+            records.setBestDay(day);
+            records.setBestDayTime(dayTime);
+        }
+
+        int weekTime = week == records.getCurrentWeek() ? records.getCurrentWeekTime() + time : time;
+        records.setCurrentWeek(week);
+        records.setCurrentWeekTime(weekTime);
+        if (weekTime > records.getBestWeekTime()) {
+            records.setBestWeek(week);
+            records.setBestWeekTime(weekTime);
+        }
+
+        int monthTime = month == records.getCurrentMonth() ? records.getCurrentMonthTime() + time : time;
+        records.setCurrentMonth(month);
+        records.setCurrentMonthTime(monthTime);
+        if (monthTime > records.getBestMonthTime()) {
+            records.setBestMonth(month);
+            records.setBestMonthTime(monthTime);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.database;
+
+import org.secuso.privacyfriendlycircuittraining.models.ActivityReport;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bounded least recently used cache of computed reports keyed by their granularity and the
+ * first day of their period. Reports are only dropped when the workout data of a day inside
+ * their period changes, so flipping back and forth between periods needs no queries.
+ * Days are keys in the format yyyyMMdd, as the ids of the workout sessions.
+ * <p>
+ * The cached reports are shared, callers must not modify them.
+ *
+ * @version 20261019
+ */
+public class ReportCache {
+
+    public enum Granularity {
+        DAY, WEEK, MONTH, YEAR, ALL_TIME
+    }
+
+    private final Map<String, Entry> reports;
+    // changes with every invalidation, see put(..., generation)
+    private long generation = 0;
+
+    public ReportCache(final int maxSize) {
+        this.reports = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cached report or null if it is not cached
+     */
+    public synchronized ActivityReport get(Granularity granularity, int start, Locale locale) {
+        Entry entry = reports.get(key(granularity, start, locale));
+        return entry != null ? entry.report : null;
+    }
+
+    /**
+     * @param start first day of the period
+     * @param end   last day of the period
+     */
+    public synchronized void put(Granularity granularity, int start, int end, Locale locale, ActivityReport report) {
+        reports.put(key(granularity, start, locale), new Entry(start, end, report));
+    }
+
+    /**
+     * Caches a report computed outside the database thread, unless the data changed since
+     * the computation started.
+     *
+     * @param generation value of {@link #getGeneration()} before the report was computed
+     */
+    public synchronized void put(Granularity granularity, int start, int end, Locale locale, ActivityReport report,
+                                 long generation) {
+        if (generation == this.generation) {
+            put(granularity, start, end, locale, report);
+        }
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Removes all reports whose period contains the given day.
+     */
+    public synchronized void invalidate(int day) {
+        generation++;
+        Iterator<Entry> iterator = reports.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.start <= day && day <= entry.end) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        reports.clear();
+    }
+
+    // titles and the first day of the week depend on the locale
+    private static String key(Granularity granularity, int start, Locale locale) {
+        return granularity + ":" + start + ":" + locale;
+    }
+
+    private static class Entry {
+        private final int start;
+        private final int end;
+        private final ActivityReport report;
+
+        Entry(int start, int end, ActivityReport report) {
+            this.start = start;
+            this.end = end;
+            this.report = report;
+        }
+    }
+}
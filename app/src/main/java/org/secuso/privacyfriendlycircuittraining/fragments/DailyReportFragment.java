@@ -18,6 +18,7 @@ import android.app.DatePickerDialog;
 import android.content.Context;
 import android.os.Bundle;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.LiveData;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import android.util.Log;
@@ -29,9 +30,14 @@ import android.widget.DatePicker;
 
 import org.secuso.privacyfriendlycircuittraining.R;
 import org.secuso.privacyfriendlycircuittraining.adapters.ReportAdapter;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
 import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
+import org.secuso.privacyfriendlycircuittraining.database.ReportCache;
+import org.secuso.privacyfriendlycircuittraining.helpers.DateKeys;
 import org.secuso.privacyfriendlycircuittraining.models.WorkoutSessionData;
 import org.secuso.privacyfriendlycircuittraining.models.ActivityDayChart;
+import org.secuso.privacyfriendlycircuittraining.models.ActivityHeatmap;
+import org.secuso.privacyfriendlycircuittraining.models.ActivityReport;
 import org.secuso.privacyfriendlycircuittraining.models.ActivitySummary;
 
 import java.text.SimpleDateFormat;
@@ -57,10 +63,13 @@ public class DailyReportFragment extends Fragment implements ReportAdapter.OnIte
     private ActivitySummary activitySummary;
     private List<Object> reports = new ArrayList<>();
     private Calendar day;
-    private boolean generatingReports;
+    private LiveData<ActivityReport> reportData;
+    private LiveData<ActivityHeatmap> heatmapData;
+    private ActivityHeatmap heatmap;
+    // day in the format yyyyMMdd on which the heatmap was loaded, it ends on that day
+    private int heatmapLoadedOn;
 
-    PFASQLiteHelper database = null;
-    WorkoutSessionData statistics = null;
+    private static final int HEATMAP_DAYS = 365;
 
     public DailyReportFragment() {
         // Required empty public constructor
@@ -93,9 +102,6 @@ public class DailyReportFragment extends Fragment implements ReportAdapter.OnIte
 
         mRecyclerView = (RecyclerView) view.findViewById(R.id.my_recycler_view);
 
-        // Generate the reports
-        generateReports(false);
-
         mAdapter = new ReportAdapter(reports);
         mAdapter.setOnItemClickListener(this);
         mRecyclerView.setAdapter(mAdapter);
@@ -111,6 +117,68 @@ public class DailyReportFragment extends Fragment implements ReportAdapter.OnIte
         return view;
     }
 
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        // Generate the reports
+        loadHeatmap();
+        generateReports(false);
+    }
+
+    /**
+     * Loads the heatmap of the last year. It does not depend on the day shown, after a
+     * workout was saved only today's cell changes. It ends today, so it is loaded again
+     * when the reports are generated on a later day.
+     */
+    private void loadHeatmap() {
+        final Context context = getActivity().getApplicationContext();
+        final String title = context.getString(R.string.heatmap_title);
+        final Locale locale = context.getResources().getConfiguration().locale;
+        if (heatmapData != null) {
+            heatmapData.removeObservers(getViewLifecycleOwner());
+        }
+        heatmapLoadedOn = DateKeys.today();
+        heatmapData = PFARepository.getInstance(context).query(db -> loadHeatmap(db, locale, title),
+                PFASQLiteHelper.TABLE_DATA);
+        heatmapData.observe(getViewLifecycleOwner(), this::showHeatmap);
+    }
+
+    /**
+     * Loads the workout time of every day of the last year up to today with a single query.
+     * The range is computed here, so a reload after a change covers the current day.
+     * Runs on the database thread.
+     */
+    private static ActivityHeatmap loadHeatmap(PFASQLiteHelper database, Locale locale, String title) {
+        int lastDay = DateKeys.toEpochDay(DateKeys.today());
+        int firstDay = DateKeys.weekStart(lastDay - HEATMAP_DAYS + 1, DateKeys.firstDayOfWeek(locale));
+        int from = DateKeys.fromEpochDay(firstDay);
+        int to = DateKeys.fromEpochDay(lastDay);
+        int[] time = new int[lastDay - firstDay + 1];
+        for (WorkoutSessionData data : database.getWorkoutDataBetween(from, to)) {
+            time[DateKeys.toEpochDay(data.getID()) - firstDay] = data.getWORKOUTTIME();
+        }
+        return new ActivityHeatmap(title, from, time);
+    }
+
+    private void showHeatmap(ActivityHeatmap heatmap) {
+        boolean added = this.heatmap == null;
+        if (added) {
+            reports.add(heatmap);
+        } else {
+            reports.set(reports.indexOf(this.heatmap), heatmap);
+        }
+        this.heatmap = heatmap;
+        if (mAdapter != null && mRecyclerView != null && !mRecyclerView.isComputingLayout()) {
+            if (added) {
+                mAdapter.notifyItemInserted(reports.indexOf(heatmap));
+            } else {
+                mAdapter.notifyItemChanged(reports.indexOf(heatmap));
+            }
+        } else {
+            Log.w(LOG_TAG, "Cannot inform adapter for changes.");
+        }
+    }
+
 
     /**
      * @return is the day which is currently shown today?
@@ -134,46 +202,73 @@ public class DailyReportFragment extends Fragment implements ReportAdapter.OnIte
      */
     private void generateReports(boolean updated) {
         Log.i(LOG_TAG, "Generating reports");
-        if (!this.isTodayShown() && updated || isDetached() || getContext() == null || generatingReports) {
+        if (!this.isTodayShown() && updated || isDetached() || getContext() == null || getView() == null) {
             // the day shown is not today or is detached
             return;
         }
-        generatingReports = true;
 
         final Context context = getActivity().getApplicationContext();
         final Locale locale = context.getResources().getConfiguration().locale;
+        final Calendar shownDay = (Calendar) day.clone();
+        int dayKey = DateKeys.fromCalendar(shownDay);
 
-        SimpleDateFormat titleDateFormat = new SimpleDateFormat("dd. MMMM", locale);
-        SimpleDateFormat idDateFormat = new SimpleDateFormat("yyyyMMdd");
+        if (heatmapLoadedOn != DateKeys.today()) {
+            // the heatmap ends on the day it was loaded, which has passed
+            loadHeatmap();
+        }
+
+        PFARepository repository = PFARepository.getInstance(context);
+        // a day shown before is displayed right away
+        ActivityReport cachedReport = repository.getCachedReport(ReportCache.Granularity.DAY, dayKey, locale);
+        if (cachedReport != null) {
+            showReport(cachedReport);
+        }
 
-        int id = Integer.parseInt(idDateFormat.format(day.getTime()));
-        database = new PFASQLiteHelper(context);
-        statistics = database.getWorkoutData(id);
+        if (reportData != null) {
+            reportData.removeObservers(getViewLifecycleOwner());
+        }
+        reportData = repository.getReport(ReportCache.Granularity.DAY, dayKey, dayKey, locale,
+                db -> loadReport(db, shownDay, locale));
+        reportData.observe(getViewLifecycleOwner(), this::showReport);
+    }
+
+    /**
+     * Loads the workout data of the given day.
+     * Runs on the database thread.
+     */
+    private static ActivityReport loadReport(PFASQLiteHelper database, Calendar day, Locale locale) {
+        SimpleDateFormat titleDateFormat = new SimpleDateFormat("dd. MMMM", locale);
+        WorkoutSessionData statistics = database.getWorkoutData(DateKeys.fromCalendar(day));
 
         int time = statistics.getWORKOUTTIME();
         int calories = statistics.getCALORIES();
 
+        return new ActivityReport(new ActivitySummary(time, calories, titleDateFormat.format(day.getTime())), null);
+    }
+
+    /**
+     * Updates the view model with the given report and notifies the adapter.
+     */
+    private void showReport(ActivityReport report) {
         // create view models
+        // the report may be cached, so the view model is a copy
         if (activitySummary == null) {
-            activitySummary = new ActivitySummary(time, calories, titleDateFormat.format(day.getTime()));
-            reports.add(activitySummary);
+            activitySummary = new ActivitySummary(report.getSummary().getTime(), report.getSummary().getCalories(),
+                    report.getSummary().getTitle());
+            // the heatmap may have been loaded first
+            reports.add(0, activitySummary);
         } else {
-            activitySummary.setTime(time);
-            activitySummary.setCalories(calories);
-            activitySummary.setTitle(titleDateFormat.format(day.getTime()));
+            activitySummary.setTime(report.getSummary().getTime());
+            activitySummary.setCalories(report.getSummary().getCalories());
+            activitySummary.setTitle(report.getSummary().getTitle());
         }
 
-
         // notify ui
         if (mAdapter != null && mRecyclerView != null && !mRecyclerView.isComputingLayout()) {
-            mAdapter.notifyItemChanged(reports.indexOf(activitySummary));
-
-
             mAdapter.notifyDataSetChanged();
         } else {
             Log.w(LOG_TAG, "Cannot inform adapter for changes.");
         }
-        generatingReports = false;
     }
 
     @Override
@@ -34,7 +34,6 @@ import com.bumptech.glide.Glide;
 
 import org.secuso.privacyfriendlycircuittraining.R;
 import org.secuso.privacyfriendlycircuittraining.activities.ExerciseActivity;
-import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
 import org.secuso.privacyfriendlycircuittraining.models.Exercise;
 
 import static android.app.Activity.RESULT_OK;
@@ -54,21 +53,17 @@ public class ExerciseDialogFragment extends DialogFragment {
     private static boolean opened;
     private View v;
     private ExerciseActivity ea;
-    private int adapterPosition;
     private static Toast toast;
-    private PFASQLiteHelper db = null;
 
-    private int exerciseId = -1;
     private Exercise loadedExercise = null;
 
     private ImageView fragment_img;
 
-    public static ExerciseDialogFragment newEditInstance(int adapterPosition, int exerciseId)
+    public static ExerciseDialogFragment newEditInstance(Exercise exercise)
     {
         ExerciseDialogFragment dialogFragment = new ExerciseDialogFragment();
         dialogFragment.editDialog = true;
-        dialogFragment.adapterPosition = adapterPosition;
-        dialogFragment.exerciseId = exerciseId;
+        dialogFragment.loadedExercise = new Exercise(exercise.getID(), exercise.getName(), exercise.getDescription(), exercise.getImage());
         return dialogFragment;
     }
 
@@ -101,11 +96,6 @@ public class ExerciseDialogFragment extends DialogFragment {
     public Dialog onCreateDialog(Bundle savedInstanceState)
     {
         ea = (ExerciseActivity) getActivity();
-        db = new PFASQLiteHelper(ea);
-
-        if(exerciseId != -1) {
-            loadedExercise = db.getExercise(exerciseId);
-        }
 
         if(loadedExercise == null) {
             loadedExercise = new Exercise(0, "", "", Uri.parse(""));
@@ -134,14 +124,10 @@ public class ExerciseDialogFragment extends DialogFragment {
                     toast.show();
                 } else {
                     if (editDialog) {
-                        db.updateExercise(loadedExercise);
-                        ea.updateExercise(adapterPosition, loadedExercise);
+                        ea.updateExercise(loadedExercise);
                     } else {
-                        long id = db.addExercise(loadedExercise);
-                        loadedExercise.setID((int) id);
                         ea.addExercise(loadedExercise);
                     }
-                    ea.setNoExererciseMessage();
                     dismiss();
                 }
             }
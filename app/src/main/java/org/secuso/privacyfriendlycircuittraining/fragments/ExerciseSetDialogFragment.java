@@ -29,17 +29,14 @@ import android.view.View;
 import android.widget.EditText;
 import android.widget.Toast;
 
-import org.json.JSONException;
 import org.secuso.privacyfriendlycircuittraining.R;
 import org.secuso.privacyfriendlycircuittraining.activities.ExerciseActivity;
 import org.secuso.privacyfriendlycircuittraining.activities.ExerciseSetActivity;
 import org.secuso.privacyfriendlycircuittraining.adapters.DialogAdapter;
-import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
 import org.secuso.privacyfriendlycircuittraining.models.Exercise;
-import org.secuso.privacyfriendlycircuittraining.models.ExerciseSet;
 
 import java.util.ArrayList;
-import java.util.List;
 
 import static android.app.Activity.RESULT_OK;
 
@@ -56,17 +53,16 @@ public class ExerciseSetDialogFragment extends DialogFragment {
     private static boolean opened;
     private View v;
     private ExerciseSetActivity ea;
-    private static int adapterPosition;
     private static int adapterId;
     private RecyclerView mRecyclerView;
     private DialogAdapter mAdapter;
     private ArrayList<Exercise> exercises;
     private Toast toast;
 
-    public static ExerciseSetDialogFragment newEditInstance(int i)
+    public static ExerciseSetDialogFragment newEditInstance(int id)
     {
         editDialog = true;
-        adapterPosition = i;
+        adapterId = id;
         ExerciseSetDialogFragment dialogFragment = getListDialogFragment();
         return dialogFragment;
     }
@@ -107,7 +103,7 @@ public class ExerciseSetDialogFragment extends DialogFragment {
     public Dialog onCreateDialog(Bundle savedInstanceState)
     {
         ea = (ExerciseSetActivity) getActivity();
-        PFASQLiteHelper db = new PFASQLiteHelper(ea);
+        final PFARepository repository = PFARepository.getInstance(ea);
         exercises = new ArrayList<>();
 
         AlertDialog.Builder builder = new AlertDialog.Builder(getActivity(), R.style.AppTheme_Dialog);
@@ -139,26 +135,20 @@ public class ExerciseSetDialogFragment extends DialogFragment {
             }
         });
 
-        List<ExerciseSet> exerciseSetsList = new ArrayList<>();
-        exerciseSetsList = db.getAllExerciseSet();
-
-        if(exerciseSetsList.size() > 0)
-            adapterId = exerciseSetsList.get(adapterPosition).getID();
-        else{
-            adapterId = 0;
-        }
-
         if(editDialog){
 
             builder.setTitle(getResources().getString(R.string.edit));
 
-            EditText etext = (EditText) v.findViewById(R.id.list_name);
+            final EditText etext = (EditText) v.findViewById(R.id.list_name);
 
-            etext.setText(db.getExerciseSet(adapterId).getName());
-            for(Integer ex: db.getExerciseSet(adapterId).getExercises()){
-                exercises.add(db.getExercise(ex));
-            }
-            mAdapter.updateAdapter(exercises);
+            repository.getExerciseSet(adapterId, exerciseSet -> {
+                etext.setText(exerciseSet.getName());
+                repository.getExercises(exerciseSet.getExercises(), loadedExercises -> {
+                    exercises.addAll(0, loadedExercises);
+                    mAdapter.updateAdapter(exercises);
+                    setNoExererciseMessage();
+                });
+            });
         }
 
         setNoExererciseMessage();
@@ -202,11 +192,7 @@ public class ExerciseSetDialogFragment extends DialogFragment {
                 }
                 else {
                     if (editDialog) {
-                        try {
-                            ea.updateExerciseSet(adapterPosition, adapterId, name, exercisesToIds(exercises));
-                        } catch (JSONException e) {
-                            e.printStackTrace();
-                        }
+                        ea.updateExerciseSet(adapterId, name, exercisesToIds(exercises));
                     } else {
                         ea.addExerciseSet(name, exercisesToIds(exercises));
                     }
@@ -16,9 +16,9 @@ package org.secuso.privacyfriendlycircuittraining.fragments;
 
 import android.app.DatePickerDialog;
 import android.content.Context;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.LiveData;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import android.util.Log;
@@ -30,19 +30,23 @@ import android.widget.DatePicker;
 
 import org.secuso.privacyfriendlycircuittraining.R;
 import org.secuso.privacyfriendlycircuittraining.adapters.ReportAdapter;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
 import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
+import org.secuso.privacyfriendlycircuittraining.database.ReportCache;
+import org.secuso.privacyfriendlycircuittraining.helpers.DateKeys;
 import org.secuso.privacyfriendlycircuittraining.models.WorkoutSessionData;
 import org.secuso.privacyfriendlycircuittraining.models.ActivityChart;
 import org.secuso.privacyfriendlycircuittraining.models.ActivityDayChart;
+import org.secuso.privacyfriendlycircuittraining.models.ActivityReport;
 import org.secuso.privacyfriendlycircuittraining.models.ActivitySummary;
+import org.secuso.privacyfriendlycircuittraining.models.ChartSeries;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * Activities that contain this fragment must implement the
@@ -66,7 +70,8 @@ public class MonthlyReportFragment extends Fragment implements ReportAdapter.OnI
     private ActivitySummary activitySummary;
     private ActivityChart activityChart;
     private List<Object> reports = new ArrayList<>();
-    private boolean generatingReports;
+    private LiveData<ActivityReport> reportData;
+    private final List<Future<?>> prefetches = new ArrayList<>();
 
 
     public MonthlyReportFragment() {
@@ -100,7 +105,6 @@ public class MonthlyReportFragment extends Fragment implements ReportAdapter.OnI
         mRecyclerView = (RecyclerView) view.findViewById(R.id.my_recycler_view);
 
         // specify an adapter
-        generateReports();
         mAdapter = new ReportAdapter(reports);
         mAdapter.setOnItemClickListener(this);
         mRecyclerView.setAdapter(mAdapter);
@@ -116,6 +120,12 @@ public class MonthlyReportFragment extends Fragment implements ReportAdapter.OnI
         return view;
     }
 
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        generateReports();
+    }
+
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
@@ -130,22 +140,10 @@ public class MonthlyReportFragment extends Fragment implements ReportAdapter.OnI
         }
     }
 
-    /**
-     * @return is the day which is currently shown today?
-     */
-    private boolean isTodayShown() {
-        if(day == null){
-            return false;
-        }
-        Calendar start = (Calendar) day.clone();
-        start.set(Calendar.DAY_OF_MONTH, 1);
-        start.set(Calendar.MILLISECOND, 0);
-        start.set(Calendar.SECOND, 0);
-        start.set(Calendar.MINUTE, 0);
-        start.set(Calendar.HOUR_OF_DAY, 0);
-        Calendar end = (Calendar) start.clone();
-        end.add(Calendar.MONTH, 1);
-        return (start.before(day) || start.equals(day)) && end.after(day);
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        cancelPrefetches();
     }
 
     /**
@@ -157,84 +155,124 @@ public class MonthlyReportFragment extends Fragment implements ReportAdapter.OnI
      */
     private void generateReports() {
         Log.i(LOG_TAG, "Generating reports");
-        if (!this.isTodayShown() || isDetached() || getContext() == null || generatingReports) {
-            // the day shown is not today or is detached
+        if (isDetached() || getContext() == null || getView() == null) {
+            // the fragment is detached
             return;
         }
-        generatingReports = true;
         final Context context = getActivity().getApplicationContext();
         final Locale locale = context.getResources().getConfiguration().locale;
-        final PFASQLiteHelper database = new PFASQLiteHelper(context);
 
+        day.set(Calendar.DAY_OF_MONTH, 1);
+        final Calendar start = (Calendar) day.clone();
+        int startKey = DateKeys.fromCalendar(start);
 
-        AsyncTask.execute(new Runnable() {
-            @Override
-            public void run() {
-                // Get all data for this day.
-                day.set(Calendar.DAY_OF_MONTH, 1);
-                Calendar start = (Calendar) day.clone();
-
-                SimpleDateFormat formatDate = new SimpleDateFormat("dd.MM", locale);
-                SimpleDateFormat idDateFormat = new SimpleDateFormat("yyyyMMdd");
-
-                Map<String, Double> timeData = new LinkedHashMap<>();
-                Map<String, Double> caloriesData = new LinkedHashMap<>();
-                timeData.put("", null);
-                caloriesData.put("", null);
-
-                int totalTime = 0;
-                int totalCalories = 0;
-                for (int i = 0; i <= day.getActualMaximum(Calendar.DAY_OF_MONTH); i++) {
-
-                    int id = Integer.parseInt(idDateFormat.format(start.getTime()));
-                    WorkoutSessionData statistics = database.getWorkoutData(id);
-
-                    int time = statistics.getWORKOUTTIME();
-                    int calories = statistics.getCALORIES();
-
-
-                    timeData.put(formatDate.format(start.getTime()), (double) time/60);
-                    caloriesData.put(formatDate.format(start.getTime()), (double) calories);
-                    totalTime += time;
-                    totalCalories += calories;
-                    if (i != day.getActualMaximum(Calendar.DAY_OF_MONTH)) {
-                        start.add(Calendar.DAY_OF_MONTH, 1);
-                    }
-                }
-                SimpleDateFormat simpleDateFormat = new SimpleDateFormat("MMMM yy", locale);
-                String title = simpleDateFormat.format(day.getTime());
-
-                // create view models
-                if (activitySummary == null) {
-                    activitySummary = new ActivitySummary(totalTime, totalCalories, title);
-                    reports.add(activitySummary);
-                } else {
-                    activitySummary.setTime(totalTime);
-                    activitySummary.setCalories(totalCalories);
-                    activitySummary.setTitle(title);
-                }
-                if (activityChart == null) {
-                    activityChart = new ActivityChart(timeData, caloriesData, title);
-                    activityChart.setDisplayedDataType(ActivityDayChart.DataType.TIME);
-                    reports.add(activityChart);
-                } else {
-                    activityChart.setTime(timeData);
-                    activityChart.setCalories(caloriesData);
-                    activityChart.setTitle(title);
-                }
-
-                // notify ui
-                if (mAdapter != null && mRecyclerView != null && !mRecyclerView.isComputingLayout()) {
-                    mAdapter.notifyItemChanged(reports.indexOf(activitySummary));
-                    mAdapter.notifyItemChanged(reports.indexOf(activityChart));
-                    mAdapter.notifyDataSetChanged();
-                } else {
-                    Log.w(LOG_TAG, "Cannot inform adapter for changes.");
-                }
-                generatingReports = false;
-            }
-        });
+        PFARepository repository = PFARepository.getInstance(context);
+        // a month shown before is displayed right away
+        ActivityReport cachedReport = repository.getCachedReport(ReportCache.Granularity.MONTH, startKey, locale);
+        if (cachedReport != null) {
+            showReport(cachedReport);
+        }
+
+        if (reportData != null) {
+            reportData.removeObservers(getViewLifecycleOwner());
+        }
+        reportData = repository.getReport(ReportCache.Granularity.MONTH, startKey, lastLoadedDay(startKey), locale,
+                db -> loadReport(db, start, locale));
+        reportData.observe(getViewLifecycleOwner(), this::showReport);
+
+        prefetchAdjacentReports(repository, start, locale);
+    }
+
+    /**
+     * Computes the previous and the next month in the background, they are likely shown next.
+     */
+    private void prefetchAdjacentReports(PFARepository repository, Calendar shownStart, final Locale locale) {
+        cancelPrefetches();
+        for (int offset : new int[]{-1, 1}) {
+            final Calendar start = (Calendar) shownStart.clone();
+            start.add(Calendar.MONTH, offset);
+            int startKey = DateKeys.fromCalendar(start);
+            prefetches.add(repository.prefetchReport(ReportCache.Granularity.MONTH, startKey,
+                    lastLoadedDay(startKey), locale, db -> loadReport(db, start, locale)));
+        }
+    }
+
+    // loadReport reads up to the first day of the next month
+    private static int lastLoadedDay(int monthStart) {
+        return DateKeys.addDays(monthStart, DateKeys.lengthOfMonth(monthStart));
+    }
+
+    private void cancelPrefetches() {
+        for (Future<?> prefetch : prefetches) {
+            prefetch.cancel(true);
+        }
+        prefetches.clear();
+    }
+
+    /**
+     * Loads the workout data of the month starting at the given day.
+     * Runs on the database thread.
+     */
+    private static ActivityReport loadReport(PFASQLiteHelper database, Calendar monthStart, Locale locale) {
+        // Get all data for this month.
+        int firstDay = DateKeys.toEpochDay(DateKeys.fromCalendar(monthStart));
+        int lastDay = monthStart.getActualMaximum(Calendar.DAY_OF_MONTH);
+
+        float[] timeData = new float[lastDay + 1];
+        float[] caloriesData = new float[lastDay + 1];
+
+        int totalTime = 0;
+        int totalCalories = 0;
+        for (int i = 0; i <= lastDay; i++) {
 
+            int id = DateKeys.fromEpochDay(firstDay + i);
+            WorkoutSessionData statistics = database.getWorkoutData(id);
+
+            int time = statistics.getWORKOUTTIME();
+            int calories = statistics.getCALORIES();
+
+            timeData[i] = (float) time / 60;
+            caloriesData[i] = calories;
+            totalTime += time;
+            totalCalories += calories;
+        }
+        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("MMMM yy", locale);
+        String title = simpleDateFormat.format(monthStart.getTime());
+
+        return new ActivityReport(new ActivitySummary(totalTime, totalCalories, title),
+                new ActivityChart(new ChartSeries(DateKeys.fromCalendar(monthStart), ChartSeries.Step.DAY,
+                        timeData, caloriesData, "dd.MM", locale), title));
+    }
+
+    /**
+     * Updates the view models with the given report and notifies the adapter.
+     */
+    private void showReport(ActivityReport report) {
+        // create view models
+        // the report may be cached, so the view models are copies
+        if (activitySummary == null) {
+            activitySummary = new ActivitySummary(report.getSummary().getTime(), report.getSummary().getCalories(),
+                    report.getSummary().getTitle());
+            reports.add(activitySummary);
+        } else {
+            activitySummary.setTime(report.getSummary().getTime());
+            activitySummary.setCalories(report.getSummary().getCalories());
+            activitySummary.setTitle(report.getSummary().getTitle());
+        }
+        if (activityChart == null) {
+            activityChart = new ActivityChart(report.getChart().getSeries(), report.getChart().getTitle());
+            activityChart.setDisplayedDataType(ActivityDayChart.DataType.TIME);
+            reports.add(activityChart);
+        } else {
+            activityChart.setSeries(report.getChart().getSeries());
+            activityChart.setTitle(report.getChart().getTitle());
+        }
+        // notify ui
+        if (mAdapter != null && mRecyclerView != null && !mRecyclerView.isComputingLayout()) {
+            mAdapter.notifyDataSetChanged();
+        } else {
+            Log.w(LOG_TAG, "Cannot inform adapter for changes.");
+        }
     }
 
     @Override
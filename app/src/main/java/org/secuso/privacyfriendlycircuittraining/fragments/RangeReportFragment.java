@@ -0,0 +1,344 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.fragments;
+
+import android.app.DatePickerDialog;
+import android.content.Context;
+import android.os.Bundle;
+import androidx.fragment.app.Fragment;
+import androidx.lifecycle.LiveData;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.DatePicker;
+
+import org.secuso.privacyfriendlycircuittraining.R;
+import org.secuso.privacyfriendlycircuittraining.adapters.ReportAdapter;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
+import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
+import org.secuso.privacyfriendlycircuittraining.helpers.DateKeys;
+import org.secuso.privacyfriendlycircuittraining.models.WorkoutSessionData;
+import org.secuso.privacyfriendlycircuittraining.models.ActivityChart;
+import org.secuso.privacyfriendlycircuittraining.models.ActivityDayChart;
+import org.secuso.privacyfriendlycircuittraining.models.ActivityReport;
+import org.secuso.privacyfriendlycircuittraining.models.ActivitySummary;
+import org.secuso.privacyfriendlycircuittraining.models.ChartSeries;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Shows the workout data of a custom range of days, by default the last 30 days.
+ * The whole range is read with a single query, the size of the bars grows from days to
+ * weeks to months with the length of the range.
+ * Use the {@link RangeReportFragment#newInstance} factory method to
+ * create an instance of this fragment.
+ *
+ * @version 20261019
+ */
+public class RangeReportFragment extends Fragment implements ReportAdapter.OnItemClickListener {
+    public static String LOG_TAG = RangeReportFragment.class.getName();
+
+    private static final int DEFAULT_RANGE_DAYS = 30;
+    // longest ranges that are still shown with one bar per day or per week
+    private static final int MAX_DAILY_BARS = 62;
+    private static final int MAX_WEEKLY_BARS = 53;
+
+    private ReportAdapter mAdapter;
+    private RecyclerView mRecyclerView;
+
+    // first and last day of the range in the format yyyyMMdd
+    private int firstDay;
+    private int lastDay;
+    private ActivitySummary activitySummary;
+    private ActivityChart activityChart;
+    private List<Object> reports = new ArrayList<>();
+    private LiveData<ActivityReport> reportData;
+
+
+    public RangeReportFragment() {
+        // Required empty public constructor
+    }
+
+    /**
+     * Use this factory method to create a new instance of
+     * this fragment using the provided parameters.
+     *
+     * @return A new instance of RangeReportFragment.
+     */
+    public static RangeReportFragment newInstance() {
+        RangeReportFragment fragment = new RangeReportFragment();
+        Bundle args = new Bundle();
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        lastDay = DateKeys.today();
+        firstDay = DateKeys.addDays(lastDay, 1 - DEFAULT_RANGE_DAYS);
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        // Inflate the layout for this fragment
+        View view = inflater.inflate(R.layout.fragment_daily_report, container, false);
+
+        mRecyclerView = (RecyclerView) view.findViewById(R.id.my_recycler_view);
+
+        // specify an adapter
+        mAdapter = new ReportAdapter(reports);
+        mAdapter.setOnItemClickListener(this);
+        mRecyclerView.setAdapter(mAdapter);
+
+        // use a linear layout manager
+        RecyclerView.LayoutManager mLayoutManager = new LinearLayoutManager(getActivity().getApplicationContext());
+        mRecyclerView.setLayoutManager(mLayoutManager);
+
+        // use this setting to improve performance if you know that changes
+        // in content do not change the layout size of the RecyclerView
+        mRecyclerView.setHasFixedSize(true);
+
+        return view;
+    }
+
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        generateReports();
+    }
+
+    /**
+     * Generates the report objects and adds them to the recycler view adapter.
+     * The following reports will be generated:
+     * * ActivitySummary
+     * * ActivityChart
+     * If one of these reports does not exist it will be created and added at the end of view.
+     */
+    private void generateReports() {
+        if (isDetached() || getContext() == null || getView() == null) {
+            Log.i(LOG_TAG, "Skipping generating reports");
+            // the fragment is detached
+            return;
+        }
+        Log.i(LOG_TAG, "Generating reports");
+        final Context context = getActivity().getApplicationContext();
+        final Locale locale = context.getResources().getConfiguration().locale;
+        final int from = firstDay;
+        final int to = lastDay;
+
+        // custom ranges are rarely shown twice, so they do not go through the report cache
+        if (reportData != null) {
+            reportData.removeObservers(getViewLifecycleOwner());
+        }
+        reportData = PFARepository.getInstance(context).query(db -> loadReport(db, from, to, locale),
+                PFASQLiteHelper.TABLE_DATA);
+        reportData.observe(getViewLifecycleOwner(), this::showReport);
+    }
+
+    /**
+     * Loads the workout data of the given range and sums it up into bars of days, weeks or
+     * months, depending on the length of the range.
+     * Runs on the database thread.
+     *
+     * @param from first day in the format yyyyMMdd
+     * @param to   last day in the format yyyyMMdd
+     */
+    private static ActivityReport loadReport(PFASQLiteHelper database, int from, int to, Locale locale) {
+        List<WorkoutSessionData> days = database.getWorkoutDataBetween(from, to);
+
+        int firstEpochDay = DateKeys.toEpochDay(from);
+        int length = DateKeys.toEpochDay(to) - firstEpochDay + 1;
+
+        ChartSeries.Step step;
+        int stepSize;
+        int count;
+        int seriesStart;
+        String labelPattern;
+        if (length <= MAX_DAILY_BARS) {
+            step = ChartSeries.Step.DAY;
+            stepSize = 1;
+            count = length;
+            seriesStart = from;
+            labelPattern = "dd.MM";
+        } else if (length <= MAX_WEEKLY_BARS * 7) {
+            step = ChartSeries.Step.DAY;
+            stepSize = 7;
+            count = (length + 6) / 7;
+            seriesStart = from;
+            labelPattern = "dd.MM";
+        } else {
+            step = ChartSeries.Step.MONTH;
+            stepSize = 1;
+            count = DateKeys.monthsBetween(from, to) + 1;
+            seriesStart = DateKeys.monthStart(from);
+            labelPattern = "MMM yy";
+        }
+
+        float[] timeData = new float[count];
+        float[] caloriesData = new float[count];
+        int totalTime = 0;
+        int totalCalories = 0;
+        for (WorkoutSessionData data : days) {
+            int index;
+            if (step == ChartSeries.Step.MONTH) {
+                index = DateKeys.monthsBetween(from, data.getID());
+            } else {
+                index = (DateKeys.toEpochDay(data.getID()) - firstEpochDay) / stepSize;
+            }
+            timeData[index] += (float) data.getWORKOUTTIME() / 60;
+            caloriesData[index] += data.getCALORIES();
+            totalTime += data.getWORKOUTTIME();
+            totalCalories += data.getCALORIES();
+        }
+
+        SimpleDateFormat titleFormat = new SimpleDateFormat("dd.MM.yy", locale);
+        String title = titleFormat.format(toCalendar(from).getTime()) + " - " + titleFormat.format(toCalendar(to).getTime());
+
+        return new ActivityReport(new ActivitySummary(totalTime, totalCalories, title),
+                new ActivityChart(new ChartSeries(seriesStart, step, stepSize, timeData, caloriesData, labelPattern, locale),
+                        title));
+    }
+
+    private static Calendar toCalendar(int key) {
+        Calendar day = Calendar.getInstance();
+        day.clear();
+        day.set(key / 10000, key / 100 % 100 - 1, key % 100);
+        return day;
+    }
+
+    /**
+     * Updates the view models with the given report and notifies the adapter.
+     */
+    private void showReport(ActivityReport report) {
+        if (activitySummary == null) {
+            activitySummary = report.getSummary();
+            reports.add(activitySummary);
+        } else {
+            activitySummary.setTime(report.getSummary().getTime());
+            activitySummary.setCalories(report.getSummary().getCalories());
+            activitySummary.setTitle(report.getSummary().getTitle());
+        }
+        if (activityChart == null) {
+            activityChart = report.getChart();
+            activityChart.setDisplayedDataType(ActivityDayChart.DataType.TIME);
+            reports.add(activityChart);
+        } else {
+            activityChart.setSeries(report.getChart().getSeries());
+            activityChart.setTitle(report.getChart().getTitle());
+        }
+        // notify ui
+        if (mAdapter != null && mRecyclerView != null && !mRecyclerView.isComputingLayout()) {
+            mAdapter.notifyDataSetChanged();
+        } else {
+            Log.w(LOG_TAG, "Cannot inform adapter for changes.");
+        }
+    }
+
+    @Override
+    public void onActivityChartDataTypeClicked(ActivityDayChart.DataType newDataType) {
+        Log.i(LOG_TAG, "Changing  displayed data type to " + newDataType.toString());
+        if (this.activityChart == null) {
+            return;
+        }
+        if (this.activityChart.getDisplayedDataType() == newDataType) {
+            return;
+        }
+        this.activityChart.setDisplayedDataType(newDataType);
+        if (this.mAdapter != null) {
+            this.mAdapter.notifyItemChanged(this.reports.indexOf(this.activityChart));
+        }
+    }
+
+    @Override
+    public void setActivityChartDataTypeChecked(Menu menu) {
+        if (this.activityChart == null) {
+            return;
+        }
+        if (this.activityChart.getDisplayedDataType() == null) {
+            menu.findItem(R.id.menu_time).setChecked(true);
+        }
+        switch (this.activityChart.getDisplayedDataType()) {
+            case CALORIES:
+                menu.findItem(R.id.menu_calories).setChecked(true);
+                break;
+            case TIME:
+                menu.findItem(R.id.menu_time).setChecked(true);
+                break;
+            default:
+                menu.findItem(R.id.menu_time).setChecked(true);
+        }
+    }
+
+    @Override
+    public void onPrevClicked() {
+        shiftRange(-1);
+    }
+
+    @Override
+    public void onNextClicked() {
+        shiftRange(1);
+    }
+
+    /**
+     * Moves the range by its own length, e.g. to compare two training blocks.
+     */
+    private void shiftRange(int direction) {
+        int length = DateKeys.toEpochDay(lastDay) - DateKeys.toEpochDay(firstDay) + 1;
+        firstDay = DateKeys.addDays(firstDay, direction * length);
+        lastDay = DateKeys.addDays(lastDay, direction * length);
+        generateReports();
+    }
+
+    /**
+     * Asks for the first and then for the last day of the range.
+     */
+    @Override
+    public void onTitleClicked() {
+        showDatePicker(R.string.range_from, firstDay, new DatePickerDialog.OnDateSetListener() {
+            @Override
+            public void onDateSet(DatePicker view, int year, int monthOfYear, int dayOfMonth) {
+                final int from = year * 10000 + (monthOfYear + 1) * 100 + dayOfMonth;
+                showDatePicker(R.string.range_to, Math.max(lastDay, from), new DatePickerDialog.OnDateSetListener() {
+                    @Override
+                    public void onDateSet(DatePicker view, int year, int monthOfYear, int dayOfMonth) {
+                        int to = year * 10000 + (monthOfYear + 1) * 100 + dayOfMonth;
+                        RangeReportFragment.this.firstDay = Math.min(from, to);
+                        RangeReportFragment.this.lastDay = Math.max(from, to);
+                        RangeReportFragment.this.generateReports();
+                    }
+                });
+            }
+        });
+    }
+
+    private void showDatePicker(int title, int day, DatePickerDialog.OnDateSetListener listener) {
+        if (getContext() == null) {
+            return;
+        }
+        DatePickerDialog dialog = new DatePickerDialog(getContext(), R.style.AppTheme_DatePickerDialog, listener,
+                day / 10000, day / 100 % 100 - 1, day % 100);
+        dialog.setTitle(title);
+        dialog.show();
+    }
+}
@@ -36,7 +36,8 @@ import java.util.List;
 
 /**
  * Displays the statistics app view.
- * In general it's an overview over the users daily, weekly and monthly reports.
+ * In general it's an overview over the users daily, weekly, monthly, yearly and all-time reports
+ * and a report of a custom range of days.
  *
  * @author Tobias Neidig, Alexander Karakuz
  * @version 20170615
@@ -69,6 +70,9 @@ public class StatisticsFragment extends Fragment {
         adapter.addFragment(DailyReportFragment.newInstance(), getString(R.string.day));
         adapter.addFragment(WeeklyReportFragment.newInstance(), getString(R.string.week));
         adapter.addFragment(MonthlyReportFragment.newInstance(), getString(R.string.month));
+        adapter.addFragment(YearlyReportFragment.newInstance(false), getString(R.string.year));
+        adapter.addFragment(YearlyReportFragment.newInstance(true), getString(R.string.all_time));
+        adapter.addFragment(RangeReportFragment.newInstance(), getString(R.string.range));
         viewPager.setAdapter(adapter);
     }
 
@@ -16,9 +16,9 @@ package org.secuso.privacyfriendlycircuittraining.fragments;
 
 import android.app.DatePickerDialog;
 import android.content.Context;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.LiveData;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import android.util.Log;
@@ -30,19 +30,23 @@ import android.widget.DatePicker;
 
 import org.secuso.privacyfriendlycircuittraining.R;
 import org.secuso.privacyfriendlycircuittraining.adapters.ReportAdapter;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
 import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
+import org.secuso.privacyfriendlycircuittraining.database.ReportCache;
+import org.secuso.privacyfriendlycircuittraining.helpers.DateKeys;
 import org.secuso.privacyfriendlycircuittraining.models.WorkoutSessionData;
 import org.secuso.privacyfriendlycircuittraining.models.ActivityChart;
 import org.secuso.privacyfriendlycircuittraining.models.ActivityDayChart;
+import org.secuso.privacyfriendlycircuittraining.models.ActivityReport;
 import org.secuso.privacyfriendlycircuittraining.models.ActivitySummary;
+import org.secuso.privacyfriendlycircuittraining.models.ChartSeries;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * Activities that contain this fragment must implement the
@@ -66,7 +70,8 @@ public class WeeklyReportFragment extends Fragment implements ReportAdapter.OnIt
     private ActivitySummary activitySummary;
     private ActivityChart activityChart;
     private List<Object> reports = new ArrayList<>();
-    private boolean generatingReports;
+    private LiveData<ActivityReport> reportData;
+    private final List<Future<?>> prefetches = new ArrayList<>();
 
 
     public WeeklyReportFragment() {
@@ -100,7 +105,6 @@ public class WeeklyReportFragment extends Fragment implements ReportAdapter.OnIt
 
         // specify an adapter
         day = Calendar.getInstance();
-        generateReports();
         mAdapter = new ReportAdapter(reports);
         mAdapter.setOnItemClickListener(this);
         mRecyclerView.setAdapter(mAdapter);
@@ -116,6 +120,12 @@ public class WeeklyReportFragment extends Fragment implements ReportAdapter.OnIt
         return view;
     }
 
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        generateReports();
+    }
+
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
@@ -130,25 +140,13 @@ public class WeeklyReportFragment extends Fragment implements ReportAdapter.OnIt
         }
     }
 
-
-    /**
-     * @return is the day which is currently shown today?
-     */
-    private boolean isTodayShown() {
-        if(day == null){
-            return false;
-        }
-        Calendar start = (Calendar) day.clone();
-        start.set(Calendar.DAY_OF_WEEK, day.getFirstDayOfWeek());
-        start.set(Calendar.MILLISECOND, 0);
-        start.set(Calendar.SECOND, 0);
-        start.set(Calendar.MINUTE, 0);
-        start.set(Calendar.HOUR_OF_DAY, 0);
-        Calendar end = (Calendar) start.clone();
-        end.add(Calendar.WEEK_OF_YEAR, 1);
-        return (start.before(day) || start.equals(day)) && end.after(day);
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        cancelPrefetches();
     }
 
+
     /**
      * Generates the report objects and adds them to the recycler view adapter.
      * The following reports will be generated:
@@ -157,88 +155,125 @@ public class WeeklyReportFragment extends Fragment implements ReportAdapter.OnIt
      * If one of these reports does not exist it will be created and added at the end of view.
      */
     private void generateReports() {
-        if (!this.isTodayShown() || isDetached() || getContext() == null || generatingReports) {
+        if (isDetached() || getContext() == null || getView() == null) {
             Log.i(LOG_TAG, "Skipping generating reports");
-            // the day shown is not today or is detached
+            // the fragment is detached
             return;
         }
         Log.i(LOG_TAG, "Generating reports");
-        generatingReports = true;
         final Context context = getActivity().getApplicationContext();
         final Locale locale = context.getResources().getConfiguration().locale;
-        final PFASQLiteHelper database = new PFASQLiteHelper(context);
 
-        AsyncTask.execute(new Runnable() {
-            @Override
-            public void run() {
-                // Get all workout data for this day.
-                day.set(Calendar.DAY_OF_WEEK, day.getFirstDayOfWeek());
-                Calendar start = (Calendar) day.clone();
-
-                SimpleDateFormat formatDate = new SimpleDateFormat("dd.MM", locale);
-                SimpleDateFormat idDateFormat = new SimpleDateFormat("yyyyMMdd");
-
-                Map<String, Double> timeData = new LinkedHashMap<>();
-                Map<String, Double> caloriesData = new LinkedHashMap<>();
-                timeData.put("", null);
-                caloriesData.put("", null);
-
-                int totalTime = 0;
-                int totalCalories = 0;
-                for (int i = 0; i < 7; i++) {
-
-                    int id = Integer.parseInt(idDateFormat.format(start.getTime()));
-                    WorkoutSessionData statistics = database.getWorkoutData(id);
-
-                    int time = statistics.getWORKOUTTIME();
-                    int calories = statistics.getCALORIES();
-
-                    timeData.put(formatDate.format(start.getTime()), (double) time/60);
-                    caloriesData.put(formatDate.format(start.getTime()), (double) calories);
-                    totalTime += time;
-                    totalCalories += calories;
-                    if (i != 6) {
-                        start.add(Calendar.DAY_OF_MONTH, 1);
-                    }
-                }
-
-                timeData.put(" ", null);
-                caloriesData.put(" ", null);
-
-                SimpleDateFormat simpleDateFormat = new SimpleDateFormat("dd.", locale);
-                SimpleDateFormat simpleDateMonthFormat = new SimpleDateFormat("dd. MMMM", locale);
-
-                String title = simpleDateFormat.format(day.getTime()) + " - " + simpleDateMonthFormat.format(start.getTime());
-
-                // create view models
-                if (activitySummary == null) {
-                    activitySummary = new ActivitySummary(totalTime, totalCalories, title);
-                    reports.add(activitySummary);
-                } else {
-                    activitySummary.setTime(totalTime);
-                    activitySummary.setCalories(totalCalories);
-                    activitySummary.setTitle(title);
-                }
-                if (activityChart == null) {
-                    activityChart = new ActivityChart(timeData, caloriesData, title);
-                    activityChart.setDisplayedDataType(ActivityDayChart.DataType.TIME);
-                    reports.add(activityChart);
-                } else {
-                    activityChart.setTime(timeData);
-                    activityChart.setCalories(caloriesData);
-                    activityChart.setTitle(title);
-                }
-                // notify ui
-                if (mAdapter != null && mRecyclerView != null && !mRecyclerView.isComputingLayout()) {
-                    mAdapter.notifyItemChanged(reports.indexOf(activitySummary));
-                    mAdapter.notifyItemChanged(reports.indexOf(activityChart));
-                    mAdapter.notifyDataSetChanged();
-                } else {
-                    Log.w(LOG_TAG, "Cannot inform adapter for changes.");
-                }
-                generatingReports = false;
-            }
-        });
+        day.set(Calendar.DAY_OF_WEEK, day.getFirstDayOfWeek());
+        final Calendar start = (Calendar) day.clone();
+        int startKey = DateKeys.fromCalendar(start);
+
+        PFARepository repository = PFARepository.getInstance(context);
+        // a week shown before is displayed right away
+        ActivityReport cachedReport = repository.getCachedReport(ReportCache.Granularity.WEEK, startKey, locale);
+        if (cachedReport != null) {
+            showReport(cachedReport);
+        }
+
+        if (reportData != null) {
+            reportData.removeObservers(getViewLifecycleOwner());
+        }
+        reportData = repository.getReport(ReportCache.Granularity.WEEK, startKey, DateKeys.addDays(startKey, 6), locale,
+                db -> loadReport(db, start, locale));
+        reportData.observe(getViewLifecycleOwner(), this::showReport);
+
+        prefetchAdjacentReports(repository, start, locale);
+    }
+
+    /**
+     * Computes the previous and the next week in the background, they are likely shown next.
+     */
+    private void prefetchAdjacentReports(PFARepository repository, Calendar shownStart, final Locale locale) {
+        cancelPrefetches();
+        for (int offset : new int[]{-1, 1}) {
+            final Calendar start = (Calendar) shownStart.clone();
+            start.add(Calendar.WEEK_OF_YEAR, offset);
+            int startKey = DateKeys.fromCalendar(start);
+            prefetches.add(repository.prefetchReport(ReportCache.Granularity.WEEK, startKey,
+                    DateKeys.addDays(startKey, 6), locale, db -> loadReport(db, start, locale)));
+        }
+    }
+
+    private void cancelPrefetches() {
+        for (Future<?> prefetch : prefetches) {
+            prefetch.cancel(true);
+        }
+        prefetches.clear();
+    }
+
+    /**
+     * Loads the workout data of the week starting at the given day.
+     * Runs on the database thread.
+     */
+    private static ActivityReport loadReport(PFASQLiteHelper database, Calendar weekStart, Locale locale) {
+        // Get all workout data for this week.
+        int firstDay = DateKeys.toEpochDay(DateKeys.fromCalendar(weekStart));
+
+        float[] timeData = new float[7];
+        float[] caloriesData = new float[7];
+
+        int totalTime = 0;
+        int totalCalories = 0;
+        for (int i = 0; i < 7; i++) {
+
+            int id = DateKeys.fromEpochDay(firstDay + i);
+            WorkoutSessionData statistics = database.getWorkoutData(id);
+
+            int time = statistics.getWORKOUTTIME();
+            int calories = statistics.getCALORIES();
+
+            timeData[i] = (float) time / 60;
+            caloriesData[i] = calories;
+            totalTime += time;
+            totalCalories += calories;
+        }
+        Calendar end = (Calendar) weekStart.clone();
+        end.add(Calendar.DAY_OF_MONTH, 6);
+
+        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("dd.", locale);
+        SimpleDateFormat simpleDateMonthFormat = new SimpleDateFormat("dd. MMMM", locale);
+
+        String title = simpleDateFormat.format(weekStart.getTime()) + " - " + simpleDateMonthFormat.format(end.getTime());
+
+        return new ActivityReport(new ActivitySummary(totalTime, totalCalories, title),
+                new ActivityChart(new ChartSeries(DateKeys.fromCalendar(weekStart), ChartSeries.Step.DAY,
+                        timeData, caloriesData, "dd.MM", locale), title));
+    }
+
+    /**
+     * Updates the view models with the given report and notifies the adapter.
+     */
+    private void showReport(ActivityReport report) {
+        // create view models
+        // the report may be cached, so the view models are copies
+        if (activitySummary == null) {
+            activitySummary = new ActivitySummary(report.getSummary().getTime(), report.getSummary().getCalories(),
+                    report.getSummary().getTitle());
+            reports.add(activitySummary);
+        } else {
+            activitySummary.setTime(report.getSummary().getTime());
+            activitySummary.setCalories(report.getSummary().getCalories());
+            activitySummary.setTitle(report.getSummary().getTitle());
+        }
+        if (activityChart == null) {
+            activityChart = new ActivityChart(report.getChart().getSeries(), report.getChart().getTitle());
+            activityChart.setDisplayedDataType(ActivityDayChart.DataType.TIME);
+            reports.add(activityChart);
+        } else {
+            activityChart.setSeries(report.getChart().getSeries());
+            activityChart.setTitle(report.getChart().getTitle());
+        }
+        // notify ui
+        if (mAdapter != null && mRecyclerView != null && !mRecyclerView.isComputingLayout()) {
+            mAdapter.notifyDataSetChanged();
+        } else {
+            Log.w(LOG_TAG, "Cannot inform adapter for changes.");
+        }
     }
 
     @Override
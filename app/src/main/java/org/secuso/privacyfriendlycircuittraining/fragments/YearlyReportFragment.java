@@ -0,0 +1,399 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.fragments;
+
+import android.app.DatePickerDialog;
+import android.content.Context;
+import android.os.Bundle;
+import androidx.fragment.app.Fragment;
+import androidx.lifecycle.LiveData;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.DatePicker;
+
+import org.secuso.privacyfriendlycircuittraining.R;
+import org.secuso.privacyfriendlycircuittraining.adapters.ReportAdapter;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
+import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
+import org.secuso.privacyfriendlycircuittraining.database.ReportCache;
+import org.secuso.privacyfriendlycircuittraining.helpers.DateKeys;
+import org.secuso.privacyfriendlycircuittraining.models.WorkoutSessionData;
+import org.secuso.privacyfriendlycircuittraining.models.ActivityChart;
+import org.secuso.privacyfriendlycircuittraining.models.ActivityDayChart;
+import org.secuso.privacyfriendlycircuittraining.models.ActivityReport;
+import org.secuso.privacyfriendlycircuittraining.models.ActivitySummary;
+import org.secuso.privacyfriendlycircuittraining.models.ChartSeries;
+import org.secuso.privacyfriendlycircuittraining.models.WorkoutRecords;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Future;
+
+/**
+ * Shows the workout data of a year or of all time with one bar per month.
+ * Unlike the other reports it does not look up every day: the totals of all months are
+ * summed up by a single query, see {@link PFASQLiteHelper#getMonthlyWorkoutData(int, int)}.
+ * Use the {@link YearlyReportFragment#newInstance} factory method to
+ * create an instance of this fragment.
+ *
+ * @version 20261019
+ */
+public class YearlyReportFragment extends Fragment implements ReportAdapter.OnItemClickListener {
+    public static String LOG_TAG = YearlyReportFragment.class.getName();
+
+    private static final String ARG_ALL_TIME = "allTime";
+
+    // range of the all-time report, the ids of the workout sessions are in the format yyyyMMdd
+    private static final int FIRST_DAY = 0;
+    private static final int LAST_DAY = 99991231;
+
+    private ReportAdapter mAdapter;
+    private RecyclerView mRecyclerView;
+
+    private boolean allTime;
+    private Calendar day;
+    private ActivitySummary activitySummary;
+    private ActivityChart activityChart;
+    private List<Object> reports = new ArrayList<>();
+    private LiveData<ActivityReport> reportData;
+    private final List<Future<?>> prefetches = new ArrayList<>();
+    private WorkoutRecords records;
+
+
+    public YearlyReportFragment() {
+        // Required empty public constructor
+    }
+
+    /**
+     * Use this factory method to create a new instance of
+     * this fragment using the provided parameters.
+     *
+     * @param allTime show all months with workout data instead of a single year
+     * @return A new instance of YearlyReportFragment.
+     */
+    public static YearlyReportFragment newInstance(boolean allTime) {
+        YearlyReportFragment fragment = new YearlyReportFragment();
+        Bundle args = new Bundle();
+        args.putBoolean(ARG_ALL_TIME, allTime);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        allTime = getArguments() != null && getArguments().getBoolean(ARG_ALL_TIME);
+        day = Calendar.getInstance();
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        // Inflate the layout for this fragment
+        View view = inflater.inflate(R.layout.fragment_daily_report, container, false);
+
+        mRecyclerView = (RecyclerView) view.findViewById(R.id.my_recycler_view);
+
+        // specify an adapter
+        mAdapter = new ReportAdapter(reports);
+        mAdapter.setOnItemClickListener(this);
+        mRecyclerView.setAdapter(mAdapter);
+
+        // use a linear layout manager
+        RecyclerView.LayoutManager mLayoutManager = new LinearLayoutManager(getActivity().getApplicationContext());
+        mRecyclerView.setLayoutManager(mLayoutManager);
+
+        // use this setting to improve performance if you know that changes
+        // in content do not change the layout size of the RecyclerView
+        mRecyclerView.setHasFixedSize(true);
+
+        return view;
+    }
+
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        generateReports();
+        if (allTime) {
+            PFARepository.getInstance(getActivity().getApplicationContext()).getWorkoutRecords()
+                    .observe(getViewLifecycleOwner(), this::showRecords);
+        }
+    }
+
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        cancelPrefetches();
+    }
+
+    /**
+     * Generates the report objects and adds them to the recycler view adapter.
+     * The following reports will be generated:
+     * * ActivitySummary
+     * * ActivityChart
+     * If one of these reports does not exist it will be created and added at the end of view.
+     */
+    private void generateReports() {
+        if (isDetached() || getContext() == null || getView() == null) {
+            Log.i(LOG_TAG, "Skipping generating reports");
+            // the fragment is detached
+            return;
+        }
+        Log.i(LOG_TAG, "Generating reports");
+        final Context context = getActivity().getApplicationContext();
+        final Locale locale = context.getResources().getConfiguration().locale;
+        final String allTimeTitle = context.getString(R.string.all_time);
+        final int year = day.get(Calendar.YEAR);
+
+        ReportCache.Granularity granularity = allTime ? ReportCache.Granularity.ALL_TIME : ReportCache.Granularity.YEAR;
+        int start = allTime ? FIRST_DAY : firstDay(year);
+        int end = allTime ? LAST_DAY : lastDay(year);
+
+        PFARepository repository = PFARepository.getInstance(context);
+        // a year shown before is displayed right away
+        ActivityReport cachedReport = repository.getCachedReport(granularity, start, locale);
+        if (cachedReport != null) {
+            showReport(cachedReport);
+        }
+
+        if (reportData != null) {
+            reportData.removeObservers(getViewLifecycleOwner());
+        }
+        reportData = repository.getReport(granularity, start, end, locale,
+                db -> allTime ? loadAllTimeReport(db, allTimeTitle, locale) : loadYearReport(db, year, locale));
+        reportData.observe(getViewLifecycleOwner(), this::showReport);
+
+        if (!allTime) {
+            prefetchAdjacentReports(repository, year, locale);
+        }
+    }
+
+    private static int firstDay(int year) {
+        return year * 10000 + 101;
+    }
+
+    private static int lastDay(int year) {
+        return year * 10000 + 1231;
+    }
+
+    /**
+     * Loads the workout data of every month of the given year.
+     * Runs on the database thread.
+     */
+    private static ActivityReport loadYearReport(PFASQLiteHelper database, int year, Locale locale) {
+        List<WorkoutSessionData> months = database.getMonthlyWorkoutData(firstDay(year), lastDay(year));
+        return createReport(months, year * 100 + 1, year * 100 + 12, "MMM", String.valueOf(year), locale);
+    }
+
+    /**
+     * Loads the workout data of every month from the first to the last one with workout data.
+     * Runs on the database thread.
+     */
+    private static ActivityReport loadAllTimeReport(PFASQLiteHelper database, String title, Locale locale) {
+        List<WorkoutSessionData> months = database.getMonthlyWorkoutData(FIRST_DAY, LAST_DAY);
+        if (months.isEmpty()) {
+            int month = DateKeys.fromCalendar(Calendar.getInstance()) / 100;
+            return createReport(months, month, month, "MMM yy", title, locale);
+        }
+        return createReport(months, months.get(0).getID(), months.get(months.size() - 1).getID(), "MMM yy", title, locale);
+    }
+
+    /**
+     * Creates a report with one bar per month from firstMonth to lastMonth, months without
+     * workout data get an empty bar.
+     *
+     * @param months     sums of the months with workout data, ordered by month
+     * @param firstMonth first month in the format yyyyMM
+     * @param lastMonth  last month in the format yyyyMM
+     */
+    private static ActivityReport createReport(List<WorkoutSessionData> months, int firstMonth, int lastMonth,
+                                               String labelFormat, String title, Locale locale) {
+        // first day of the month in the format yyyyMMdd, as used by DateKeys and ChartSeries
+        int firstMonthStart = firstMonth * 100 + 1;
+        int count = DateKeys.monthsBetween(firstMonthStart, lastMonth * 100 + 1) + 1;
+        float[] timeData = new float[count];
+        float[] caloriesData = new float[count];
+
+        int totalTime = 0;
+        int totalCalories = 0;
+        for (WorkoutSessionData data : months) {
+            int index = DateKeys.monthsBetween(firstMonthStart, data.getID() * 100 + 1);
+            timeData[index] = (float) data.getWORKOUTTIME() / 60;
+            caloriesData[index] = data.getCALORIES();
+            totalTime += data.getWORKOUTTIME();
+            totalCalories += data.getCALORIES();
+        }
+
+        return new ActivityReport(new ActivitySummary(totalTime, totalCalories, title),
+                new ActivityChart(new ChartSeries(firstMonthStart, ChartSeries.Step.MONTH,
+                        timeData, caloriesData, labelFormat, locale), title));
+    }
+
+    /**
+     * Computes the previous and the next year in the background, they are likely shown next.
+     */
+    private void prefetchAdjacentReports(PFARepository repository, int year, final Locale locale) {
+        cancelPrefetches();
+        for (int offset : new int[]{-1, 1}) {
+            final int adjacentYear = year + offset;
+            prefetches.add(repository.prefetchReport(ReportCache.Granularity.YEAR, firstDay(adjacentYear),
+                    lastDay(adjacentYear), locale, db -> loadYearReport(db, adjacentYear, locale)));
+        }
+    }
+
+    private void cancelPrefetches() {
+        for (Future<?> prefetch : prefetches) {
+            prefetch.cancel(true);
+        }
+        prefetches.clear();
+    }
+
+    /**
+     * Updates the view models with the given report and notifies the adapter.
+     */
+    private void showReport(ActivityReport report) {
+        // the report may be cached, so the view models are copies
+        if (activitySummary == null) {
+            activitySummary = new ActivitySummary(report.getSummary().getTime(), report.getSummary().getCalories(),
+                    report.getSummary().getTitle());
+            // the records may have been loaded first
+            reports.add(0, activitySummary);
+        } else {
+            activitySummary.setTime(report.getSummary().getTime());
+            activitySummary.setCalories(report.getSummary().getCalories());
+            activitySummary.setTitle(report.getSummary().getTitle());
+        }
+        if (activityChart == null) {
+            activityChart = new ActivityChart(report.getChart().getSeries(), report.getChart().getTitle());
+            activityChart.setDisplayedDataType(ActivityDayChart.DataType.TIME);
+            reports.add(1, activityChart);
+        } else {
+            activityChart.setSeries(report.getChart().getSeries());
+            activityChart.setTitle(report.getChart().getTitle());
+        }
+        // notify ui
+        if (mAdapter != null && mRecyclerView != null && !mRecyclerView.isComputingLayout()) {
+            mAdapter.notifyDataSetChanged();
+        } else {
+            Log.w(LOG_TAG, "Cannot inform adapter for changes.");
+        }
+    }
+
+    /**
+     * Shows the records below the report, they are updated with every saved workout.
+     */
+    private void showRecords(WorkoutRecords records) {
+        if (records == null) {
+            return;
+        }
+        boolean added = this.records == null;
+        if (added) {
+            reports.add(records);
+        } else {
+            reports.set(reports.indexOf(this.records), records);
+        }
+        this.records = records;
+        if (mAdapter != null && mRecyclerView != null && !mRecyclerView.isComputingLayout()) {
+            if (added) {
+                mAdapter.notifyItemInserted(reports.indexOf(records));
+            } else {
+                mAdapter.notifyItemChanged(reports.indexOf(records));
+            }
+        } else {
+            Log.w(LOG_TAG, "Cannot inform adapter for changes.");
+        }
+    }
+
+    @Override
+    public void onActivityChartDataTypeClicked(ActivityDayChart.DataType newDataType) {
+        Log.i(LOG_TAG, "Changing  displayed data type to " + newDataType.toString());
+        if (this.activityChart == null) {
+            return;
+        }
+        if (this.activityChart.getDisplayedDataType() == newDataType) {
+            return;
+        }
+        this.activityChart.setDisplayedDataType(newDataType);
+        if (this.mAdapter != null) {
+            this.mAdapter.notifyItemChanged(this.reports.indexOf(this.activityChart));
+        }
+    }
+
+    @Override
+    public void setActivityChartDataTypeChecked(Menu menu) {
+        if (this.activityChart == null) {
+            return;
+        }
+        if (this.activityChart.getDisplayedDataType() == null) {
+            menu.findItem(R.id.menu_time).setChecked(true);
+        }
+        switch (this.activityChart.getDisplayedDataType()) {
+            case CALORIES:
+                menu.findItem(R.id.menu_calories).setChecked(true);
+                break;
+            case TIME:
+                menu.findItem(R.id.menu_time).setChecked(true);
+                break;
+            default:
+                menu.findItem(R.id.menu_time).setChecked(true);
+        }
+    }
+
+    @Override
+    public void onPrevClicked() {
+        if (allTime) {
+            return;
+        }
+        this.day.add(Calendar.YEAR, -1);
+        this.generateReports();
+    }
+
+    @Override
+    public void onNextClicked() {
+        if (allTime) {
+            return;
+        }
+        this.day.add(Calendar.YEAR, 1);
+        this.generateReports();
+    }
+
+    @Override
+    public void onTitleClicked() {
+        if (allTime) {
+            return;
+        }
+        int year = this.day.get(Calendar.YEAR);
+        int month = this.day.get(Calendar.MONTH);
+        int day = this.day.get(Calendar.DAY_OF_MONTH);
+
+        // Create a new instance of DatePickerDialog and return it
+        DatePickerDialog dialog = new DatePickerDialog(getContext(), R.style.AppTheme_DatePickerDialog, new DatePickerDialog.OnDateSetListener() {
+            @Override
+            public void onDateSet(DatePicker view, int year, int monthOfYear, int dayOfMonth) {
+                YearlyReportFragment.this.day.set(Calendar.DAY_OF_MONTH, dayOfMonth);
+                YearlyReportFragment.this.day.set(Calendar.MONTH, monthOfYear);
+                YearlyReportFragment.this.day.set(Calendar.YEAR, year);
+                YearlyReportFragment.this.generateReports();
+            }
+        }, year, month, day);
+        dialog.show();
+    }
+}
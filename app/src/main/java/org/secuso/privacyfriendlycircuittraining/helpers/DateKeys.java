@@ -0,0 +1,145 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.helpers;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Conversions between day keys in the format yyyyMMdd, which are the ids of the workout
+ * sessions, and epoch days, i.e. the number of days since 1970-01-01.
+ * Everything is integer arithmetic on the proleptic Gregorian calendar, so stepping through
+ * a range of days needs neither a Calendar nor a date format.
+ *
+ * @version 20261019
+ */
+public class DateKeys {
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    // days from 0000-03-01 to 1970-01-01, the calculations count from a march 1st
+    private static final int DAYS_TO_EPOCH = 719468;
+    private static final int DAYS_PER_ERA = 146097;
+
+    private DateKeys() {
+    }
+
+    /**
+     * @return today in the default time zone in the format yyyyMMdd
+     */
+    public static int today() {
+        long now = System.currentTimeMillis();
+        return fromEpochDay((int) Math.floorDiv(now + TimeZone.getDefault().getOffset(now), MILLIS_PER_DAY));
+    }
+
+    /**
+     * @return the given day in the format yyyyMMdd
+     */
+    public static int fromCalendar(Calendar day) {
+        return day.get(Calendar.YEAR) * 10000 + (day.get(Calendar.MONTH) + 1) * 100 + day.get(Calendar.DAY_OF_MONTH);
+    }
+
+    /**
+     * @param key day in the format yyyyMMdd
+     * @return days since 1970-01-01
+     */
+    public static int toEpochDay(int key) {
+        int month = key / 100 % 100;
+        int day = key % 100;
+        int year = key / 10000 - (month <= 2 ? 1 : 0);
+        int era = Math.floorDiv(year, 400);
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_ERA + dayOfEra - DAYS_TO_EPOCH;
+    }
+
+    /**
+     * @param epochDay days since 1970-01-01
+     * @return the day in the format yyyyMMdd
+     */
+    public static int fromEpochDay(int epochDay) {
+        int days = epochDay + DAYS_TO_EPOCH;
+        int era = Math.floorDiv(days, DAYS_PER_ERA);
+        int dayOfEra = days - era * DAYS_PER_ERA;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 10000 + month * 100 + day;
+    }
+
+    /**
+     * @return the day in the format yyyyMMdd that is the given number of days after key
+     */
+    public static int addDays(int key, int days) {
+        return fromEpochDay(toEpochDay(key) + days);
+    }
+
+    /**
+     * @return the day of the week of the given epoch day as one of the Calendar constants,
+     * e.g. {@link Calendar#MONDAY}
+     */
+    public static int dayOfWeek(int epochDay) {
+        // 1970-01-01 was a thursday
+        return Math.floorMod(epochDay + 4, 7) + Calendar.SUNDAY;
+    }
+
+    /**
+     * @return the first day of the week of the given locale as one of the Calendar constants
+     */
+    public static int firstDayOfWeek(Locale locale) {
+        return Calendar.getInstance(locale).getFirstDayOfWeek();
+    }
+
+    /**
+     * @param firstDayOfWeek one of the Calendar constants, see {@link #firstDayOfWeek(Locale)}
+     * @return the epoch day on which the week of the given epoch day starts
+     */
+    public static int weekStart(int epochDay, int firstDayOfWeek) {
+        return epochDay - Math.floorMod(dayOfWeek(epochDay) - firstDayOfWeek, 7);
+    }
+
+    /**
+     * @return the first day of the month of the given day, both in the format yyyyMMdd
+     */
+    public static int monthStart(int key) {
+        return key / 100 * 100 + 1;
+    }
+
+    /**
+     * @return the number of months from the month of the first to the month of the second
+     * day, both in the format yyyyMMdd
+     */
+    public static int monthsBetween(int from, int to) {
+        return (to / 10000 - from / 10000) * 12 + to / 100 % 100 - from / 100 % 100;
+    }
+
+    /**
+     * @return the number of days of the month of the given day in the format yyyyMMdd
+     */
+    public static int lengthOfMonth(int key) {
+        int year = key / 10000;
+        int month = key / 100 % 100;
+        if (month == 2) {
+            boolean leapYear = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+            return leapYear ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+}
@@ -14,8 +14,6 @@
 
 package org.secuso.privacyfriendlycircuittraining.models;
 
-import java.util.Map;
-
 /**
  * Activity chart model
  *
@@ -25,14 +23,12 @@ import java.util.Map;
 
 public class ActivityChart {
     private String title;
-    private Map<String, Double> time;
-    private Map<String, Double> calories;
+    private ChartSeries series;
     private ActivityDayChart.DataType displayedDataType;
 
-    public ActivityChart(Map<String, Double> time, Map<String, Double> calories, String title) {
-        this.time = time;
+    public ActivityChart(ChartSeries series, String title) {
+        this.series = series;
         this.title = title;
-        this.calories = calories;
     }
 
     public String getTitle() {
@@ -43,20 +39,12 @@ public class ActivityChart {
         this.title = title;
     }
 
-    public Map<String, Double> getTime() {
-        return time;
-    }
-
-    public void setTime(Map<String, Double> time) {
-        this.time = time;
-    }
-
-    public Map<String, Double> getCalories() {
-        return calories;
+    public ChartSeries getSeries() {
+        return series;
     }
 
-    public void setCalories(Map<String, Double> calories) {
-        this.calories = calories;
+    public void setSeries(ChartSeries series) {
+        this.series = series;
     }
 
     public ActivityDayChart.DataType getDisplayedDataType() {
@@ -0,0 +1,48 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.models;
+
+/**
+ * Workout time per day over a range of days, shown as a heatmap with one column per week.
+ *
+ * @version 20261019
+ */
+public class ActivityHeatmap {
+    private final String title;
+    private final int firstDay;
+    private final int[] time;
+
+    /**
+     * @param firstDay first day in the format yyyyMMdd, the first day of a week
+     * @param time     workout time in seconds per day
+     */
+    public ActivityHeatmap(String title, int firstDay, int[] time) {
+        this.title = title;
+        this.firstDay = firstDay;
+        this.time = time;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public int getFirstDay() {
+        return firstDay;
+    }
+
+    public int[] getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.models;
+
+/**
+ * Result of a report computation for one period: the summary and, if the period
+ * spans more than one day, the chart.
+ *
+ * @version 20261019
+ */
+
+public class ActivityReport {
+    private final ActivitySummary summary;
+    private final ActivityChart chart;
+
+    public ActivityReport(ActivitySummary summary, ActivityChart chart) {
+        this.summary = summary;
+        this.chart = chart;
+    }
+
+    public ActivitySummary getSummary() {
+        return summary;
+    }
+
+    public ActivityChart getChart() {
+        return chart;
+    }
+}
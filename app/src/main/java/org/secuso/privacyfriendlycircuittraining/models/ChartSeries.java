@@ -0,0 +1,149 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.models;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Values of an activity chart with one point per day or month, or per bin of several of them.
+ * The x axis is described by the first day and the step between two points, so the
+ * labels are only formatted when the chart asks for them.
+ *
+ * @version 20261019
+ */
+public class ChartSeries {
+
+    public enum Step {
+        DAY(Calendar.DAY_OF_MONTH), MONTH(Calendar.MONTH);
+
+        private final int calendarField;
+
+        Step(int calendarField) {
+            this.calendarField = calendarField;
+        }
+    }
+
+    private final int startDay;
+    private final Step step;
+    private final int stepSize;
+    private final float[] time;
+    private final float[] calories;
+    private final String labelPattern;
+    private final Locale locale;
+
+    private SimpleDateFormat labelFormat;
+    private String[] labels;
+
+    /**
+     * @param startDay     first day in the format yyyyMMdd
+     * @param step         distance between two points
+     * @param time         workout time in minutes per point
+     * @param calories     burned calories per point, same length as time
+     * @param labelPattern date pattern of the axis labels
+     */
+    public ChartSeries(int startDay, Step step, float[] time, float[] calories, String labelPattern, Locale locale) {
+        this(startDay, step, 1, time, calories, labelPattern, locale);
+    }
+
+    /**
+     * @param stepSize number of days or months covered by one point
+     */
+    public ChartSeries(int startDay, Step step, int stepSize, float[] time, float[] calories,
+                       String labelPattern, Locale locale) {
+        if (time.length != calories.length) {
+            throw new IllegalArgumentException("time and calories differ in length");
+        }
+        this.startDay = startDay;
+        this.step = step;
+        this.stepSize = stepSize;
+        this.time = time;
+        this.calories = calories;
+        this.labelPattern = labelPattern;
+        this.locale = locale;
+    }
+
+    public int getStartDay() {
+        return startDay;
+    }
+
+    public Step getStep() {
+        return step;
+    }
+
+    /**
+     * @return number of days or months covered by one point
+     */
+    public int getStepSize() {
+        return stepSize;
+    }
+
+    public int size() {
+        return time.length;
+    }
+
+    public float[] getTime() {
+        return time;
+    }
+
+    public float[] getCalories() {
+        return calories;
+    }
+
+    public float[] getValues(ActivityDayChart.DataType dataType) {
+        return dataType == ActivityDayChart.DataType.CALORIES ? calories : time;
+    }
+
+    /**
+     * @return the axis label of the given point, formatted on first use
+     */
+    public String getLabel(int index) {
+        if (labels == null) {
+            labels = new String[size()];
+            labelFormat = new SimpleDateFormat(labelPattern, locale);
+        }
+        if (labels[index] == null) {
+            Calendar day = Calendar.getInstance();
+            day.clear();
+            day.set(startDay / 10000, startDay / 100 % 100 - 1, startDay % 100);
+            day.add(step.calendarField, index * stepSize);
+            labels[index] = labelFormat.format(day.getTime());
+        }
+        return labels[index];
+    }
+
+    /**
+     * Sums up consecutive points, so that the series has at most maxPoints points.
+     * The values are totals, so a bin holds the sum of its points and keeps the label of
+     * its first one.
+     *
+     * @return this series if it is short enough, otherwise a new one
+     */
+    public ChartSeries downsample(int maxPoints) {
+        if (maxPoints <= 0 || size() <= maxPoints) {
+            return this;
+        }
+        int binSize = (size() + maxPoints - 1) / maxPoints;
+        int bins = (size() + binSize - 1) / binSize;
+        float[] binnedTime = new float[bins];
+        float[] binnedCalories = new float[bins];
+        for (int i = 0; i < size(); i++) {
+            binnedTime[i / binSize] += time[i];
+            binnedCalories[i / binSize] += calories[i];
+        }
+        return new ChartSeries(startDay, step, stepSize * binSize, binnedTime, binnedCalories, labelPattern, locale);
+    }
+}
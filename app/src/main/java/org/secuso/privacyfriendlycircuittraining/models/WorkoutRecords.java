@@ -0,0 +1,202 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.models;
+
+import org.secuso.privacyfriendlycircuittraining.helpers.DateKeys;
+
+/**
+ * Streaks, personal records and totals over all workout sessions.
+ * Times are in seconds, days are keys in the format yyyyMMdd.
+ *
+ * @version 20261019
+ */
+public class WorkoutRecords {
+    // first day of the week the weeks were computed with, one of the Calendar constants
+    private int firstDayOfWeek;
+    private int totalTime;
+    private int totalCalories;
+    // number of days with workout time
+    private int workoutDays;
+    // last day with workout time in the format yyyyMMdd, 0 if there is none
+    private int lastDay;
+    // consecutive days with workout time up to the last one
+    private int currentStreak;
+    private int longestStreak;
+    // in the format yyyyMMdd
+    private int bestDay;
+    private int bestDayTime;
+    // first day of the week in the format yyyyMMdd
+    private int bestWeek;
+    private int bestWeekTime;
+    // in the format yyyyMM
+    private int bestMonth;
+    private int bestMonthTime;
+    // week and month of the latest saved session with their time so far
+    private int currentWeek;
+    private int currentWeekTime;
+    private int currentMonth;
+    private int currentMonthTime;
+
+    public WorkoutRecords() {
+    }
+
+    /**
+     * @param today the current day in the format yyyyMMdd
+     * @return the current streak if it is still running, i.e. the last workout was today or
+     * yesterday, otherwise 0
+     */
+    public int getActiveStreak(int today) {
+        if (lastDay == 0) {
+            return 0;
+        }
+        return DateKeys.toEpochDay(today) - DateKeys.toEpochDay(lastDay) <= 1 ? currentStreak : 0;
+    }
+
+    public int getFirstDayOfWeek() {
+        return firstDayOfWeek;
+    }
+
+    public void setFirstDayOfWeek(int firstDayOfWeek) {
+        this.firstDayOfWeek = firstDayOfWeek;
+    }
+
+    public int getTotalTime() {
+        return totalTime;
+    }
+
+    public void setTotalTime(int totalTime) {
+        this.totalTime = totalTime;
+    }
+
+    public int getTotalCalories() {
+        return totalCalories;
+    }
+
+    public void setTotalCalories(int totalCalories) {
+        this.totalCalories = totalCalories;
+    }
+
+    public int getWorkoutDays() {
+        return workoutDays;
+    }
+
+    public void setWorkoutDays(int workoutDays) {
+        this.workoutDays = workoutDays;
+    }
+
+    public int getLastDay() {
+        return lastDay;
+    }
+
+    public void setLastDay(int lastDay) {
+        this.lastDay = lastDay;
+    }
+
+    public int getCurrentStreak() {
+        return currentStreak;
+    }
+
+    public void setCurrentStreak(int currentStreak) {
+        this.currentStreak = currentStreak;
+    }
+
+    public int getLongestStreak() {
+        return longestStreak;
+    }
+
+    public void setLongestStreak(int longestStreak) {
+        this.longestStreak = longestStreak;
+    }
+
+    public int getBestDay() {
+        return bestDay;
+    }
+
+    public void setBestDay(int bestDay) {
+        this.bestDay = bestDay;
+    }
+
+    public int getBestDayTime() {
+        return bestDayTime;
+    }
+
+    public void setBestDayTime(int bestDayTime) {
+        this.bestDayTime = bestDayTime;
+    }
+
+    public int getBestWeek() {
+        return bestWeek;
+    }
+
+    public void setBestWeek(int bestWeek) {
+        this.bestWeek = bestWeek;
+    }
+
+    public int getBestWeekTime() {
+        return bestWeekTime;
+    }
+
+    public void setBestWeekTime(int bestWeekTime) {
+        this.bestWeekTime = bestWeekTime;
+    }
+
+    public int getBestMonth() {
+        return bestMonth;
+    }
+
+    public void setBestMonth(int bestMonth) {
+        this.bestMonth = bestMonth;
+    }
+
+    public int getBestMonthTime() {
+        return bestMonthTime;
+    }
+
+    public void setBestMonthTime(int bestMonthTime) {
+        this.bestMonthTime = bestMonthTime;
+    }
+
+    public int getCurrentWeek() {
+        return currentWeek;
+    }
+
+    public void setCurrentWeek(int currentWeek) {
+        this.currentWeek = currentWeek;
+    }
+
+    public int getCurrentWeekTime() {
+        return currentWeekTime;
+    }
+
+    public void setCurrentWeekTime(int currentWeekTime) {
+        this.currentWeekTime = currentWeekTime;
+    }
+
+    public int getCurrentMonth() {
+        return currentMonth;
+    }
+
+    public void setCurrentMonth(int currentMonth) {
+        this.currentMonth = currentMonth;
+    }
+
+    public int getCurrentMonthTime() {
+        return currentMonthTime;
+    }
+
+    public void setCurrentMonthTime(int currentMonthTime) {
+        this.currentMonthTime = currentMonthTime;
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.preferences;
+
+import android.app.AlertDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.preference.DialogPreference;
+import android.util.AttributeSet;
+
+import org.secuso.privacyfriendlycircuittraining.R;
+import org.secuso.privacyfriendlycircuittraining.database.ExerciseCache;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
+import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
+import org.secuso.privacyfriendlycircuittraining.database.QueryStats;
+
+/**
+ * Debug dialog that shows the timings of all database operations of this process.
+ * Only available in debug builds.
+ *
+ * @version 20261019
+ */
+
+public class DatabaseStatsPreference extends DialogPreference {
+
+    public DatabaseStatsPreference(Context oContext, AttributeSet attrs){
+        super(oContext, attrs);
+    }
+
+    @Override
+    protected void onClick()
+    {
+        PFARepository.getInstance(getContext()).execute(new PFARepository.Operation<String>() {
+            @Override
+            public String run(PFASQLiteHelper db) {
+                ExerciseCache cache = db.getExerciseCache();
+                return "Exercise cache: " + cache.getHitCount() + " hits, " + cache.getMissCount() + " misses\n\n"
+                        + QueryStats.getInstance().getSummary();
+            }
+        }, new PFARepository.Callback<String>() {
+            @Override
+            public void onResult(String summary) {
+                showSummary(summary);
+            }
+        });
+    }
+
+    private void showSummary(String summary) {
+        AlertDialog.Builder dialog = new AlertDialog.Builder(getContext());
+        dialog.setTitle(getContext().getResources().getString(R.string.pref_database_stats_title));
+        dialog.setMessage(summary);
+        dialog.setCancelable(true);
+        dialog.setPositiveButton(android.R.string.ok, null);
+        dialog.setNeutralButton(getContext().getResources().getString(R.string.pref_database_stats_reset), new DialogInterface.OnClickListener()
+        {
+            @Override
+            public void onClick(DialogInterface dialog, int which)
+            {
+                QueryStats.getInstance().reset();
+            }
+        });
+        dialog.create().show();
+    }
+}
@@ -22,7 +22,7 @@ import android.util.AttributeSet;
 import android.widget.Toast;
 
 import org.secuso.privacyfriendlycircuittraining.R;
-import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
 
 /**
  * Pref dialog to ask the user if he wants to delete all saved workout statistics.
@@ -50,8 +50,7 @@ public class DeletePreference extends DialogPreference {
             @Override
             public void onClick(DialogInterface dialog, int which)
             {
-                PFASQLiteHelper database  = new PFASQLiteHelper(getContext());
-                database.deleteAllWorkokutData();
+                PFARepository.getInstance(getContext()).deleteAllWorkoutData();
 
                 Toast.makeText(getContext(), getContext().getResources().getString(R.string.pref_delete_statistics_dialog_toast), Toast.LENGTH_SHORT).show();
             }
@@ -33,13 +33,11 @@ import androidx.core.app.NotificationCompat;
 
 import org.secuso.privacyfriendlycircuittraining.R;
 import org.secuso.privacyfriendlycircuittraining.activities.WorkoutActivity;
-import org.secuso.privacyfriendlycircuittraining.database.PFASQLiteHelper;
-import org.secuso.privacyfriendlycircuittraining.models.WorkoutSessionData;
+import org.secuso.privacyfriendlycircuittraining.database.PFARepository;
+import org.secuso.privacyfriendlycircuittraining.helpers.DateKeys;
 import org.secuso.privacyfriendlycircuittraining.tutorial.PrefManager;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 
 
 /**
@@ -95,9 +93,6 @@ public class TimerService extends Service {
     private NotificationManager notiManager = null;
     private boolean isAppInBackground = false;
 
-    //Database for the statistics
-    private PFASQLiteHelper database = null;
-    private WorkoutSessionData statistics = null;
     private int timeSpentWorkingOut = 0;
     private int caloriesBurned = 0;
     private int caloriesPerExercise = 0;
@@ -805,36 +800,15 @@ public class TimerService extends Service {
         currentTitle = getString(R.string.workout_headline_done);
     }
 
-    /**
-     * Returns todays date as int in the form of yyyyMMdd
-     * @return Today as in id
-     */
-    private int getTodayAsID() {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
-        String concatDate = dateFormat.format(new Date());
-
-        return Integer.parseInt(concatDate);
-    }
-
     /**
      * Updates the database with calculated global values.
      * Saved values are the workout duration and calories burned.
      */
     private void saveStatistics(){
-        database = new PFASQLiteHelper(getBaseContext());
-        int id = getTodayAsID();
-
-        statistics = database.getWorkoutData(id);
-
-        if(statistics.getID() == 0){
-            database.addWorkoutDataWithID(new WorkoutSessionData(id, 0, 0));
-            statistics = database.getWorkoutData(id);
-        }
-
-        int totalTimeSpentTraining = statistics.getWORKOUTTIME() + this.timeSpentWorkingOut;
-        int totalCaloriesBurnt = isCaloriesEnabled(this) ? statistics.getCALORIES() + this.caloriesBurned : statistics.getCALORIES();
+        int id = DateKeys.today();
+        int calories = isCaloriesEnabled(this) ? this.caloriesBurned : 0;
 
-        database.updateWorkoutData(new WorkoutSessionData(id, totalTimeSpentTraining, totalCaloriesBurnt));
+        PFARepository.getInstance(this).addWorkoutStatistics(id, this.timeSpentWorkingOut, calories);
         this.timeSpentWorkingOut = 0;
         this.caloriesBurned = 0;
     }
@@ -0,0 +1,171 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.views;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.core.content.ContextCompat;
+
+import org.secuso.privacyfriendlycircuittraining.R;
+import org.secuso.privacyfriendlycircuittraining.models.ActivityHeatmap;
+
+/**
+ * Draws an {@link ActivityHeatmap} with one column per week and one row per day of the week.
+ * The cells are rendered into a bitmap once, onDraw only copies it. When new data only differs
+ * in some days, e.g. after today's workout was saved, only their cells are rendered again.
+ *
+ * @version 20261019
+ */
+public class HeatmapView extends View {
+
+    private static final int DAYS_PER_WEEK = 7;
+    // lower bounds of the workout time in seconds for the levels above "no workout"
+    private static final int[] LEVEL_SECONDS = {1, 15 * 60, 30 * 60, 60 * 60};
+    private static final float CELL_GAP_RATIO = 0.15f;
+
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final int[] levelColors = new int[LEVEL_SECONDS.length + 1];
+
+    private ActivityHeatmap heatmap;
+    private Bitmap bitmap;
+    private Canvas bitmapCanvas;
+    // level of every cell as it is in the bitmap
+    private int[] drawnLevels;
+
+    public HeatmapView(Context context) {
+        this(context, null);
+    }
+
+    public HeatmapView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        int color = ContextCompat.getColor(context, R.color.colorPrimary);
+        levelColors[0] = Color.argb(25, Color.red(color), Color.green(color), Color.blue(color));
+        for (int level = 1; level < levelColors.length; level++) {
+            int alpha = 255 * level / LEVEL_SECONDS.length;
+            levelColors[level] = Color.argb(alpha, Color.red(color), Color.green(color), Color.blue(color));
+        }
+    }
+
+    /**
+     * Shows the given heatmap. If it covers the same days as the one shown, only the cells
+     * whose level changed are rendered again.
+     */
+    public void setHeatmap(ActivityHeatmap heatmap) {
+        boolean sameDays = this.heatmap != null && this.heatmap.getFirstDay() == heatmap.getFirstDay()
+                && this.heatmap.getTime().length == heatmap.getTime().length;
+        this.heatmap = heatmap;
+        if (!sameDays) {
+            requestLayout();
+            renderAll();
+            return;
+        }
+        if (bitmap == null) {
+            return;
+        }
+        boolean changed = false;
+        int[] time = heatmap.getTime();
+        for (int i = 0; i < time.length; i++) {
+            int level = level(time[i]);
+            if (level != drawnLevels[i]) {
+                drawCell(i, level);
+                changed = true;
+            }
+        }
+        if (changed) {
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int height = getPaddingTop() + getPaddingBottom();
+        if (heatmap != null) {
+            height += cellSize(width) * DAYS_PER_WEEK;
+        }
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        renderAll();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (bitmap != null) {
+            canvas.drawBitmap(bitmap, 0, 0, null);
+        }
+    }
+
+    private int columns() {
+        return (heatmap.getTime().length + DAYS_PER_WEEK - 1) / DAYS_PER_WEEK;
+    }
+
+    private float cellSize(int width) {
+        return (float) (width - getPaddingLeft() - getPaddingRight()) / columns();
+    }
+
+    private void renderAll() {
+        if (heatmap == null || getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        if (bitmap == null || bitmap.getWidth() != getWidth() || bitmap.getHeight() != getHeight()) {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+            bitmap = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+            bitmapCanvas = new Canvas(bitmap);
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        int[] time = heatmap.getTime();
+        drawnLevels = new int[time.length];
+        for (int i = 0; i < time.length; i++) {
+            drawCell(i, level(time[i]));
+        }
+        invalidate();
+    }
+
+    private void drawCell(int index, int level) {
+        float size = cellSize(getWidth());
+        float gap = size * CELL_GAP_RATIO;
+        float left = getPaddingLeft() + index / DAYS_PER_WEEK * size;
+        float top = getPaddingTop() + index % DAYS_PER_WEEK * size;
+        // the colors are translucent, so the old cell has to be cleared first
+        bitmapCanvas.save();
+        bitmapCanvas.clipRect(left, top, left + size, top + size);
+        bitmapCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        bitmapCanvas.restore();
+        paint.setColor(levelColors[level]);
+        bitmapCanvas.drawRect(left + gap / 2, top + gap / 2, left + size - gap / 2, top + size - gap / 2, paint);
+        drawnLevels[index] = level;
+    }
+
+    private static int level(int seconds) {
+        int level = 0;
+        while (level < LEVEL_SECONDS.length && seconds >= LEVEL_SECONDS[level]) {
+            level++;
+        }
+        return level;
+    }
+}
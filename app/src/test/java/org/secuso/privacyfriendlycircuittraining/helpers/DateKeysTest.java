@@ -0,0 +1,123 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.helpers;
+
+import org.junit.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Calendar;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the integer arithmetic of {@link DateKeys} with java.time, in particular around
+ * leap days and year boundaries.
+ *
+ * @version 20261019
+ */
+public class DateKeysTest {
+
+    private static final LocalDate FIRST = LocalDate.of(1899, 1, 1);
+    private static final LocalDate LAST = LocalDate.of(2101, 12, 31);
+
+    @Test
+    public void epochDaysMatchJavaTime() {
+        for (LocalDate date = FIRST; !date.isAfter(LAST); date = date.plusDays(1)) {
+            assertEquals(date.toString(), date.toEpochDay(), DateKeys.toEpochDay(key(date)));
+            assertEquals(date.toString(), key(date), DateKeys.fromEpochDay((int) date.toEpochDay()));
+        }
+    }
+
+    @Test
+    public void leapDays() {
+        // 2000 and 2024 are leap years, 1900 and 2023 are not
+        assertEquals(20000229, DateKeys.addDays(20000228, 1));
+        assertEquals(20000301, DateKeys.addDays(20000229, 1));
+        assertEquals(19000301, DateKeys.addDays(19000228, 1));
+        assertEquals(20240229, DateKeys.addDays(20240301, -1));
+        assertEquals(20230301, DateKeys.addDays(20230228, 1));
+        assertEquals(20250228, DateKeys.addDays(20240229, 365));
+        assertEquals(29, DateKeys.lengthOfMonth(20000201));
+        assertEquals(28, DateKeys.lengthOfMonth(19000201));
+        assertEquals(29, DateKeys.lengthOfMonth(20240215));
+    }
+
+    @Test
+    public void addDaysMatchesJavaTime() {
+        int[] offsets = {-800, -366, -365, -31, -1, 0, 1, 31, 365, 366, 800};
+        for (LocalDate date : boundaryDays()) {
+            for (int offset : offsets) {
+                assertEquals(date + " + " + offset, key(date.plusDays(offset)), DateKeys.addDays(key(date), offset));
+            }
+        }
+    }
+
+    @Test
+    public void monthsBetweenMatchesJavaTime() {
+        for (LocalDate from : boundaryDays()) {
+            for (LocalDate to : boundaryDays()) {
+                long expected = ChronoUnit.MONTHS.between(YearMonth.from(from), YearMonth.from(to));
+                assertEquals(from + " - " + to, expected, DateKeys.monthsBetween(key(from), key(to)));
+            }
+        }
+    }
+
+    @Test
+    public void lengthOfMonthMatchesJavaTime() {
+        for (YearMonth month = YearMonth.from(FIRST); !month.isAfter(YearMonth.from(LAST)); month = month.plusMonths(1)) {
+            assertEquals(month.toString(), month.lengthOfMonth(), DateKeys.lengthOfMonth(key(month.atDay(1))));
+        }
+    }
+
+    @Test
+    public void weekStartMatchesJavaTime() {
+        int[] firstDays = {Calendar.SUNDAY, Calendar.MONDAY, Calendar.SATURDAY};
+        for (LocalDate date = LocalDate.of(1999, 12, 1); date.isBefore(LocalDate.of(2025, 2, 1)); date = date.plusDays(1)) {
+            int epochDay = (int) date.toEpochDay();
+            assertEquals(date.toString(), calendarDay(date.getDayOfWeek()), DateKeys.dayOfWeek(epochDay));
+            for (int firstDay : firstDays) {
+                LocalDate expected = date.with(TemporalAdjusters.previousOrSame(dayOfWeek(firstDay)));
+                assertEquals(date + " " + firstDay, expected.toEpochDay(), DateKeys.weekStart(epochDay, firstDay));
+            }
+        }
+    }
+
+    // first and last days of the years and leap months that the reports step across
+    private static LocalDate[] boundaryDays() {
+        return new LocalDate[]{
+                LocalDate.of(1899, 12, 31), LocalDate.of(1900, 1, 1), LocalDate.of(1900, 2, 28),
+                LocalDate.of(1900, 3, 1), LocalDate.of(1999, 12, 31), LocalDate.of(2000, 1, 1),
+                LocalDate.of(2000, 2, 29), LocalDate.of(2000, 3, 1), LocalDate.of(2023, 12, 31),
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 2, 29), LocalDate.of(2024, 12, 31),
+                LocalDate.of(2025, 1, 1), LocalDate.of(2100, 2, 28), LocalDate.of(2100, 3, 1)
+        };
+    }
+
+    private static int key(LocalDate date) {
+        return date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+    }
+
+    private static int calendarDay(DayOfWeek day) {
+        return day.getValue() % 7 + Calendar.SUNDAY;
+    }
+
+    private static DayOfWeek dayOfWeek(int calendarDay) {
+        return DayOfWeek.of((calendarDay + 5) % 7 + 1);
+    }
+}
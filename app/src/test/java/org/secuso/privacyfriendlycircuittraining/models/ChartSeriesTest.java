@@ -0,0 +1,129 @@
+/**
+ * This file is part of Privacy Friendly Circuit Trainer.
+ * Privacy Friendly Circuit Trainer is free software:
+ * you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or any later version.
+ * Privacy Friendly Circuit Trainer is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Friendly Interval Timer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.secuso.privacyfriendlycircuittraining.models;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link ChartSeries#downsample(int)} sums up the points into bins without
+ * losing any of them.
+ *
+ * @version 20261019
+ */
+public class ChartSeriesTest {
+
+    private static final int START_DAY = 20241230;
+
+    @Test
+    public void shortSeriesIsUnchanged() {
+        ChartSeries series = series(10);
+
+        assertSame(series, series.downsample(10));
+        assertSame(series, series.downsample(50));
+        assertSame(series, series.downsample(0));
+    }
+
+    @Test
+    public void exactMultipleGivesFullBins() {
+        ChartSeries binned = series(12).downsample(4);
+
+        assertEquals(4, binned.size());
+        assertEquals(3, binned.getStepSize());
+        assertArrayEquals(new float[]{0 + 1 + 2, 3 + 4 + 5, 6 + 7 + 8, 9 + 10 + 11}, binned.getTime(), 0);
+        assertArrayEquals(new float[]{0 + 2 + 4, 6 + 8 + 10, 12 + 14 + 16, 18 + 20 + 22}, binned.getCalories(), 0);
+    }
+
+    @Test
+    public void remainderGoesIntoLastBin() {
+        ChartSeries binned = series(10).downsample(4);
+
+        assertEquals(4, binned.size());
+        assertEquals(3, binned.getStepSize());
+        assertArrayEquals(new float[]{0 + 1 + 2, 3 + 4 + 5, 6 + 7 + 8, 9}, binned.getTime(), 0);
+        assertArrayEquals(new float[]{0 + 2 + 4, 6 + 8 + 10, 12 + 14 + 16, 18}, binned.getCalories(), 0);
+    }
+
+    @Test
+    public void remainderCanLeaveFewerBinsThanAllowed() {
+        // bins of 3 points, the 4th bin would be empty
+        ChartSeries binned = series(9).downsample(4);
+
+        assertEquals(3, binned.size());
+        assertEquals(3, binned.getStepSize());
+    }
+
+    @Test
+    public void totalsArePreserved() {
+        for (int size : new int[]{31, 365, 366, 1000}) {
+            for (int maxPoints : new int[]{1, 7, 30, 60, 100}) {
+                ChartSeries series = series(size);
+                ChartSeries binned = series.downsample(maxPoints);
+
+                assertTrue(binned.size() <= maxPoints);
+                assertEquals(sum(series.getTime()), sum(binned.getTime()), 0);
+                assertEquals(sum(series.getCalories()), sum(binned.getCalories()), 0);
+                assertTrue(binned.getStepSize() * binned.size() >= size);
+            }
+        }
+    }
+
+    @Test
+    public void binKeepsLabelOfFirstPoint() {
+        ChartSeries series = series(21);
+        ChartSeries binned = series.downsample(3);
+
+        assertEquals(START_DAY, binned.getStartDay());
+        assertEquals(series.getLabel(0), binned.getLabel(0));
+        assertEquals(series.getLabel(7), binned.getLabel(1));
+        assertEquals(series.getLabel(14), binned.getLabel(2));
+        assertEquals("20250106", binned.getLabel(1));
+    }
+
+    @Test
+    public void steppedSeriesMultipliesStepSize() {
+        ChartSeries months = new ChartSeries(20240101, ChartSeries.Step.MONTH, 2,
+                new float[8], new float[8], "yyyyMM", Locale.US);
+        ChartSeries binned = months.downsample(4);
+
+        assertEquals(4, binned.getStepSize());
+        assertEquals("202405", binned.getLabel(1));
+    }
+
+    // one point per day, the values are the index and twice the index
+    private static ChartSeries series(int size) {
+        float[] time = new float[size];
+        float[] calories = new float[size];
+        for (int i = 0; i < size; i++) {
+            time[i] = i;
+            calories[i] = 2 * i;
+        }
+        return new ChartSeries(START_DAY, ChartSeries.Step.DAY, time, calories, "yyyyMMdd", Locale.US);
+    }
+
+    private static double sum(float[] values) {
+        double sum = 0;
+        for (float value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}